@@ -1,14 +1,19 @@
 package org.lab.sms;
 
+import org.lab.sms.dataaccess.ItemCache;
+import org.lab.sms.dataaccess.ProductCatalog;
 import org.lab.sms.dataaccess.StockRepository;
 import org.lab.sms.domain.Location;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class DataLoader implements ApplicationRunner {
     @Autowired
     JdbcTemplate jdbcTemplate;
@@ -16,11 +21,19 @@ public class DataLoader implements ApplicationRunner {
     @Autowired
     StockRepository stockRepository;
 
+    @Autowired
+    ProductCatalog productCatalog;
+
+    @Autowired
+    ItemCache itemCache;
+
     public void run(ApplicationArguments args) {
         System.out.println("Clearing tables...");
         jdbcTemplate.update("delete from item");
         jdbcTemplate.update("delete from location");
         jdbcTemplate.update("delete from product");
+        productCatalog.clear();
+        itemCache.clear();
 
         stockRepository.insert(new Location("S0", "Store 0"));
         stockRepository.insert(new Location("S1", "Store 1"));
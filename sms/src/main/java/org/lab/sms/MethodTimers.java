@@ -0,0 +1,74 @@
+package org.lab.sms;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every public method of <code>StockManager</code> and <code>JdbcStockRepository</code> called from outside
+ * the class, as timers <code>sms.manager</code> and <code>sms.repository</code> tagged with the method and the
+ * exception thrown, if any. Percentile histograms of these timers are enabled through
+ * <code>management.metrics.distribution.percentiles-histogram.sms</code>.
+ */
+@Aspect
+@Component
+public class MethodTimers {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    @Around("execution(public * org.lab.sms.logic.StockManager.*(..))")
+    public Object timeManager(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("sms.manager", joinPoint);
+    }
+
+    @Around("execution(public * org.lab.sms.dataaccess.JdbcStockRepository.*(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("sms.repository", joinPoint);
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            timers.computeIfAbsent(method, m -> timer(name, m, "none"))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timer(name, method, e.getClass().getSimpleName()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timer(String name, Method method, String exception) {
+        return Timer.builder(name)
+                .tag("method", signature(method))
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return method name with the simple names of its parameter types, to tell overloaded methods apart
+     */
+    private static String signature(Method method) {
+        StringJoiner parameters = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> type : method.getParameterTypes()) {
+            parameters.add(type.getSimpleName());
+        }
+        return parameters.toString();
+    }
+}
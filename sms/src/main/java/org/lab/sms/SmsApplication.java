@@ -1,17 +1,32 @@
 package org.lab.sms;
 
 import org.lab.sms.dataaccess.StockRepository;
+import org.lab.sms.domain.CommonBean;
+import org.lab.sms.domain.Item;
 import org.lab.sms.domain.Location;
+import org.lab.sms.domain.Product;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import javax.annotation.PostConstruct;
 
 @SpringBootApplication
+@EnableScheduling
 public class SmsApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(SmsApplication.class, args);
     }
 
+    /**
+     * Resolve the annotation metadata of the domain beans before the first request needs it.
+     */
+    @PostConstruct
+    void registerDomainBeans() {
+        CommonBean.register(Product.class, Location.class, Item.class);
+    }
+
 }
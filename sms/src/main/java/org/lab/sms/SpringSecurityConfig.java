@@ -32,6 +32,11 @@ public class SpringSecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/stock/level").anonymous()
                 .antMatchers(HttpMethod.POST, "/stock/level").hasRole("ADMIN")
                 .antMatchers(HttpMethod.PATCH, "/stock/level").hasRole("ADMIN")
+                .antMatchers(HttpMethod.POST, "/stock/level/file-import").hasRole("ADMIN")
+                .antMatchers(HttpMethod.POST, "/stock/level/bulk-load").hasRole("ADMIN")
+                .antMatchers("/stock/import/**", "/stock/import").hasRole("ADMIN")
+                .antMatchers("/stock/cache", "/stock/statements").hasRole("ADMIN")
+                .antMatchers("/actuator/metrics/**", "/actuator/prometheus").hasRole("ADMIN")
                 .and()
                 .csrf().disable()
                 .formLogin().disable();
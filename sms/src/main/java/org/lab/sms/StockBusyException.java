@@ -0,0 +1,12 @@
+package org.lab.sms;
+
+/**
+ * Stock levels could not be written because of lock conflicts that persisted after retrying. The request was valid
+ * and can be repeated.
+ */
+public class StockBusyException extends StockingException {
+
+    public StockBusyException(String message) {
+        super(message);
+    }
+}
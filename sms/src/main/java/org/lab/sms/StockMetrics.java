@@ -0,0 +1,79 @@
+package org.lab.sms;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.lab.sms.dataaccess.CacheStats;
+import org.lab.sms.dataaccess.ItemCache;
+import org.lab.sms.dataaccess.ProductCatalog;
+import org.lab.sms.logic.StockLedger;
+import org.lab.sms.logic.StockRetry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the statistics the stock components keep themselves: cache gets, evictions and sizes of the product
+ * catalog and the item cache, retries of stock writes, and changes waiting in the stock ledger.
+ * <p/>
+ * The meters are registered once the components exist rather than through a <code>MeterBinder</code>, as binders
+ * are created with the meter registry, which the repository below the stock ledger already depends on.
+ */
+@Component
+public class StockMetrics {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ProductCatalog productCatalog;
+
+    @Autowired
+    ItemCache itemCache;
+
+    @Autowired
+    StockRetry stockRetry;
+
+    @Autowired
+    StockLedger stockLedger;
+
+    @PostConstruct
+    void bind() {
+        MeterRegistry registry = meterRegistry;
+        bindCache(registry, "product-catalog", productCatalog, ProductCatalog::getStats);
+        bindCache(registry, "item-cache", itemCache, ItemCache::getStats);
+
+        FunctionCounter.builder("sms.stock.retries", stockRetry, StockRetry::getRetries)
+                .description("Stock writes retried after a deadlock or lock timeout")
+                .register(registry);
+        FunctionCounter.builder("sms.stock.retry.exhaustions", stockRetry, StockRetry::getExhaustions)
+                .description("Stock writes that failed after their last retry")
+                .register(registry);
+        Gauge.builder("sms.ledger.pending", stockLedger, StockLedger::getPendingSize)
+                .description("Products and locations with changes waiting in the stock ledger")
+                .register(registry);
+    }
+
+    /**
+     * Bind the statistics of a cache. Meters hold their source object weakly, so the cache component itself is the
+     * source and its statistics are read on each scrape.
+     */
+    private static <T> void bindCache(MeterRegistry registry, String cache, T source, Function<T, CacheStats> stats) {
+        counter("cache.gets", cache, source, stats, CacheStats::getHits).tag("result", "hit").register(registry);
+        counter("cache.gets", cache, source, stats, CacheStats::getMisses).tag("result", "miss").register(registry);
+        counter("cache.evictions", cache, source, stats, CacheStats::getEvictions).register(registry);
+        counter("cache.expirations", cache, source, stats, CacheStats::getExpirations).register(registry);
+        counter("cache.loads", cache, source, stats, CacheStats::getLoads).register(registry);
+        Gauge.builder("cache.size", source, s -> stats.apply(s).getSize()).tag("cache", cache).register(registry);
+    }
+
+    private static <T> FunctionCounter.Builder<T> counter(String name, String cache, T source,
+                                                          Function<T, CacheStats> stats,
+                                                          ToDoubleFunction<CacheStats> value) {
+        return FunctionCounter.builder(name, source, s -> value.applyAsDouble(stats.apply(s))).tag("cache", cache);
+    }
+}
@@ -0,0 +1,85 @@
+package org.lab.sms;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seeds a synthetic catalog and inventory for the h2 profile, after <code>DataLoader</code> has reset the tables.
+ * Product <i>n</i> has id <code>SP-n</code>, location <i>n</i> has code <code>SL-n</code>. Item <i>i</i> stocks
+ * product <code>i % products</code> at location <code>i / products % locations</code>, so small inventories stock
+ * every product at a few locations.
+ */
+@Component
+@Profile("h2")
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class SyntheticDataLoader implements ApplicationRunner {
+
+    private static final Log logger = LogFactory.getLog(SyntheticDataLoader.class);
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${sms.seed.products:10000}")
+    int products;
+
+    @Value("${sms.seed.locations:1000}")
+    int locations;
+
+    @Value("${sms.seed.items:100000}")
+    long items;
+
+    @Value("${sms.seed.batch-size:10000}")
+    int batchSize;
+
+    public void run(ApplicationArguments args) {
+        long start = System.currentTimeMillis();
+
+        List<Object[]> rows = new ArrayList<>(batchSize);
+        for (int i = 0; i < locations; i++) {
+            rows.add(new Object[]{"SL-" + i, "Synthetic location " + i});
+            rows = flush("insert into location (code, name) values(?,?)", rows, false);
+        }
+        flush("insert into location (code, name) values(?,?)", rows, true);
+
+        rows = new ArrayList<>(batchSize);
+        for (int i = 0; i < products; i++) {
+            rows.add(new Object[]{"SP-" + i, "Synthetic product " + i});
+            rows = flush("insert into product (id, name) values(?,?)", rows, false);
+        }
+        flush("insert into product (id, name) values(?,?)", rows, true);
+
+        long itemCount = products == 0 || locations == 0 ? 0 : Math.min(items, (long) products * locations);
+        rows = new ArrayList<>(batchSize);
+        for (long i = 0; i < itemCount; i++) {
+            rows.add(new Object[]{"SP-" + i % products, "SL-" + i / products % locations, (int) (i % 997)});
+            rows = flush("insert into item (product_id, location_code, quantity) values(?,?,?)", rows, false);
+        }
+        flush("insert into item (product_id, location_code, quantity) values(?,?,?)", rows, true);
+
+        logger.info("Seeded " + products + " products, " + locations + " locations and " + itemCount + " items in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Insert the collected rows once a batch is full, or when <code>last</code> is set.
+     *
+     * @return the list to collect the next rows in
+     */
+    private List<Object[]> flush(String sql, List<Object[]> rows, boolean last) {
+        if (rows.isEmpty() || (!last && rows.size() < batchSize)) return rows;
+        jdbcTemplate.batchUpdate(sql, rows);
+        return new ArrayList<>(batchSize);
+    }
+}
@@ -0,0 +1,18 @@
+package org.lab.sms;
+
+import org.lab.sms.service.StockLevelMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    // appended, as converter beans would be placed before the JSON converter and win for Accept: */*
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new StockLevelMessageConverter());
+    }
+}
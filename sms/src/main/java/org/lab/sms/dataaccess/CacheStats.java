@@ -0,0 +1,86 @@
+package org.lab.sms.dataaccess;
+
+/**
+ * Snapshot of the size and effectiveness of a cache.
+ */
+public class CacheStats {
+
+    private final String name;
+    private final int size;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long loads;
+    private final long loadMillis;
+
+    public CacheStats(String name, int size, int maxSize, long hits, long misses, long evictions, long expirations,
+                      long loads, long loadMillis) {
+        this.name = name;
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.loads = loads;
+        this.loadMillis = loadMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return fraction of lookups that were served from the cache, 0 when there were no lookups
+     */
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * @return number of database queries that loaded entries
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return total milliseconds spent in loading queries
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * @return average milliseconds of a loading query, 0 when nothing was loaded
+     */
+    public double getAverageLoadMillis() {
+        return loads == 0 ? 0 : (double) loadMillis / loads;
+    }
+}
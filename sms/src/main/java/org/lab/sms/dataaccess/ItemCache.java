@@ -0,0 +1,139 @@
+package org.lab.sms.dataaccess;
+
+import org.lab.sms.domain.Item;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of all items of a product, holding at most <code>sms.item-cache.max-size</code> products for
+ * at most <code>sms.item-cache.ttl</code> milliseconds. A size of 0 disables the cache.
+ * <p/>
+ * A product is invalidated when one of its items is written, and again when the writing transaction commits. Items
+ * loaded while an invalidation happened are not cached, so that a load that raced a write cannot cache stale items.
+ */
+@Component
+public class ItemCache {
+
+    @Value("${sms.item-cache.max-size:10000}")
+    int maxSize;
+
+    @Value("${sms.item-cache.ttl:60000}")
+    long ttl;
+
+    private BoundedCache<String, List<Item>> items;
+
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        items = new BoundedCache<>(maxSize, ttl);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return copies of the items of the product, in location code order, or null when the product is not cached
+     */
+    public List<Item> get(String productId) {
+        if (!isEnabled()) return null;
+        List<Item> cached = items.get(productId);
+        return cached != null ? copy(cached) : null;
+    }
+
+    /**
+     * Start loading products from the database.
+     *
+     * @return token to pass to <code>loaded</code>
+     */
+    public long loading() {
+        return invalidations.get();
+    }
+
+    /**
+     * Cache the items of a product loaded from the database, unless an item was written since loading started.
+     *
+     * @param token        returned by <code>loading</code> before the items were queried
+     * @param productItems all items of the product, in location code order
+     */
+    public void put(long token, String productId, List<Item> productItems) {
+        if (!isEnabled()) return;
+        synchronized (this) {
+            if (invalidations.get() == token) {
+                items.put(productId, copy(productItems));
+            }
+        }
+    }
+
+    /**
+     * Record the time a loading query took.
+     */
+    public void recordLoad(long nanos) {
+        loads.incrementAndGet();
+        loadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Invalidate the product of an item that is being written, now and after the current transaction completes.
+     */
+    public void written(String productId) {
+        written(Collections.singleton(productId));
+    }
+
+    /**
+     * Invalidate the products of items that are being written, now and after the current transaction completes.
+     */
+    public void written(Collection<String> productIds) {
+        if (!isEnabled()) return;
+        invalidate(productIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(productIds);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            invalidations.incrementAndGet();
+            items.clear();
+        }
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats("items", items.size(), maxSize, items.getHits(), items.getMisses(),
+                items.getEvictions(), items.getExpirations(), loads.get(), loadNanos.get() / 1_000_000L);
+    }
+
+    private void invalidate(Collection<String> productIds) {
+        synchronized (this) {
+            invalidations.incrementAndGet();
+            for (String productId : productIds) {
+                items.remove(productId);
+            }
+        }
+    }
+
+    private static List<Item> copy(List<Item> productItems) {
+        List<Item> copies = new ArrayList<>(productItems.size());
+        for (Item item : productItems) {
+            copies.add(new Item(item.getProductId(), item.getLocationCode(), item.getQuantity()));
+        }
+        return Collections.unmodifiableList(copies);
+    }
+}
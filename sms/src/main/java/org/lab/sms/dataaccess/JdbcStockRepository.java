@@ -1,27 +1,140 @@
 package org.lab.sms.dataaccess;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.lab.sms.domain.Item;
 import org.lab.sms.domain.Location;
 import org.lab.sms.domain.Product;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 @Repository
 public class JdbcStockRepository implements StockRepository {
 
+    // SQL Server accepts at most 2100 parameters per statement
+    private static final int MAX_IN_LIST = 1000;
+
+    // IN list lengths of batched lookups; shorter lists are padded to the next length so only a few plans are cached
+    private static final int[] IN_LIST_SIZES = {1, 10, 50, 100, 250, 500, MAX_IN_LIST};
+
+    private static final RowMapper<Item> ITEM_ROW_MAPPER = (rs, rowNum) ->
+            new Item(
+                    rs.getString("product_id"),
+                    rs.getString("location_code"),
+                    rs.getInt("quantity")
+            );
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ProductCatalog productCatalog;
+
+    @Autowired
+    private ItemCache itemCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sms.stream.fetch-size:1000}")
+    private int streamFetchSize;
+
+    @Value("${sms.merge.bulk-threshold:100}")
+    private int mergeBulkThreshold;
+
+    @Value("${sms.query.parallelism:4}")
+    private int queryParallelism;
+
+    private ExecutorService queryExecutor;
+
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private volatile Boolean bulkCopySupported;
+
+    // rows written, by table and by update or insert, and updates that missed and fell back to an insert
+    private Counter productsUpdated;
+    private Counter productsInserted;
+    private Counter productFallbacks;
+    private Counter itemsUpdated;
+    private Counter itemsInserted;
+    private Counter itemFallbacks;
+
+    @PostConstruct
+    void start() {
+        namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        queryExecutor = Executors.newFixedThreadPool(Math.max(1, queryParallelism),
+                new CustomizableThreadFactory("stock-query-"));
+        productsUpdated = rowsWritten("product", "update");
+        productsInserted = rowsWritten("product", "insert");
+        productFallbacks = fallbacks("product");
+        itemsUpdated = rowsWritten("item", "update");
+        itemsInserted = rowsWritten("item", "insert");
+        itemFallbacks = fallbacks("item");
+    }
+
+    @PreDestroy
+    void stop() {
+        queryExecutor.shutdown();
+    }
+
+    private Counter rowsWritten(String table, String operation) {
+        return Counter.builder("sms.rows.written")
+                .description("Rows updated or inserted")
+                .tag("table", table)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private Counter fallbacks(String table) {
+        return Counter.builder("sms.rows.upsert.fallbacks")
+                .description("Upserts whose update found no row and that inserted the row instead")
+                .tag("table", table)
+                .register(meterRegistry);
+    }
+
     @Override
     public int insert(Location location) throws DataAccessException {
         return jdbcTemplate.update(
@@ -75,27 +188,41 @@ public class JdbcStockRepository implements StockRepository {
 
     @Override
     public int insert(Product product) throws DataAccessException {
-        return jdbcTemplate.update(
+        int rows = jdbcTemplate.update(
                 "insert into product (id, name) values(?,?)",
                 product.getId(), product.getName());
+        productCatalog.written(product);
+        productsInserted.increment(rows);
+        return rows;
     }
 
     @Override
     public int update(Product product) throws DataAccessException {
-        return jdbcTemplate.update(
+        int rows = jdbcTemplate.update(
                 "update product set name = ? where id = ?",
                 product.getName(), product.getId());
+        if (rows > 0) productCatalog.written(product);
+        productsUpdated.increment(rows);
+        return rows;
     }
 
     @Override
     public void save(Product product) throws DataAccessException {
-        if (update(product) == 0) insert(product);
+        if (update(product) == 0) {
+            productFallbacks.increment();
+            insert(product);
+        }
     }
 
+    /**
+     * Find a product through the product catalog, querying the database only when the catalog does not know it.
+     */
     @Override
     public Product findProduct(String id) throws DataAccessException {
+        Product cached = productCatalog.get(id);
+        if (cached != null) return cached;
         try {
-            return jdbcTemplate.queryForObject(
+            Product product = jdbcTemplate.queryForObject(
                     "select * from product where id = ?",
                     new Object[]{id},
                     (rs, rowNum) ->
@@ -104,11 +231,53 @@ public class JdbcStockRepository implements StockRepository {
                                     rs.getString("name")
                             )
             );
+            productCatalog.put(product);
+            return product;
         } catch (EmptyResultDataAccessException e) {
             return null;
         }
     }
 
+    /**
+     * Find products by id through the product catalog. Products the catalog does not know are queried in chunks, see
+     * <code>chunk</code>.
+     *
+     * @return the products that exist, in no particular order
+     */
+    @Override
+    public List<Product> findProducts(Collection<String> ids) throws DataAccessException {
+        List<Product> products = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            Product cached = productCatalog.get(id);
+            if (cached != null) {
+                products.add(cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        for (List<String> chunk : chunk(missing)) {
+            SqlParameterSource namedParameters = new MapSqlParameterSource("ids", chunk);
+            List<Product> loaded = namedParameterJdbcTemplate.query(
+                    "select * from product where id in (:ids)",
+                    namedParameters,
+                    (rs, rowNum) ->
+                            new Product(
+                                    rs.getString("id"),
+                                    rs.getString("name")
+                            )
+            );
+            for (Product product : loaded) {
+                productCatalog.put(product);
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Find all products, refreshing the product catalog with them.
+     */
     @Override
     public List<Product> findAllProducts() throws DataAccessException {
         List<Product> products = jdbcTemplate.query(
@@ -120,30 +289,135 @@ public class JdbcStockRepository implements StockRepository {
                         )
         );
         if (products == null) products = new ArrayList<>();
+        productCatalog.warm(products);
         return products;
     }
 
+    /**
+     * Add the products that do not exist yet, leaving existing products unchanged. On SQL Server, lists of at least
+     * <code>sms.merge.bulk-threshold</code> products are bulk copied into a temporary table and added with one
+     * MERGE; otherwise they are added with one batch of conditional inserts.
+     *
+     * @param products products with distinct ids
+     * @return number of products added
+     */
+    @Override
+    public int mergeProducts(List<Product> products) throws DataAccessException {
+        if (products.isEmpty()) return 0;
+        Set<String> added = new HashSet<>();
+        if (useBulkCopy(products.size())) {
+            List<Object[]> rows = new ArrayList<>(products.size());
+            for (Product product : products) {
+                rows.add(new Object[]{product.getId(), product.getName()});
+            }
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                stage(con, "#stage_product", "product", new String[]{"id", "name"},
+                        new int[]{Types.VARCHAR, Types.VARCHAR}, rows);
+                try (Statement statement = con.createStatement();
+                     ResultSet rs = statement.executeQuery(
+                             "merge product with (holdlock) as t using #stage_product as s on t.id = s.id " +
+                                     "when not matched then insert (id, name) values (s.id, s.name) " +
+                                     "output inserted.id;")) {
+                    while (rs.next()) added.add(rs.getString(1));
+                } catch (SQLException | RuntimeException e) {
+                    drop(con, "#stage_product", e);
+                    throw e;
+                }
+                drop(con, "#stage_product");
+                return null;
+            });
+        } else {
+            int[] counts;
+            try {
+                counts = jdbcTemplate.batchUpdate(
+                        "insert into product (id, name) select ?, ? where not exists (select 1 from product where id = ?)",
+                        new BatchPreparedStatementSetter() {
+                            @Override
+                            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                                Product product = products.get(i);
+                                ps.setString(1, product.getId());
+                                ps.setString(2, product.getName());
+                                ps.setString(3, product.getId());
+                            }
+
+                            @Override
+                            public int getBatchSize() {
+                                return products.size();
+                            }
+                        });
+            } catch (DuplicateKeyException e) {
+                throw insertedConcurrently("Products", e);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) added.add(products.get(i).getId());
+            }
+        }
+        for (Product product : products) {
+            if (added.contains(product.getId())) productCatalog.written(product);
+        }
+        productsInserted.increment(added.size());
+        return added.size();
+    }
+
+    /**
+     * Insert new products in bulk, with a bulk copy on SQL Server for lists of at least
+     * <code>sms.merge.bulk-threshold</code> products and with one batch of inserts otherwise.
+     *
+     * @param products products that do not exist yet
+     * @return number of products inserted
+     */
+    @Override
+    public int insertProducts(List<Product> products) throws DataAccessException {
+        if (products.isEmpty()) return 0;
+        List<Object[]> rows = new ArrayList<>(products.size());
+        for (Product product : products) {
+            rows.add(new Object[]{product.getId(), product.getName()});
+        }
+        bulkInsert("product", new String[]{"id", "name"}, new int[]{Types.VARCHAR, Types.VARCHAR}, rows);
+        for (Product product : products) {
+            productCatalog.written(product);
+        }
+        productsInserted.increment(products.size());
+        return products.size();
+    }
+
     @Override
     public int insert(Item item) throws DataAccessException {
-        return jdbcTemplate.update(
+        itemCache.written(item.getProductId());
+        int rows = jdbcTemplate.update(
                 "insert into item (product_id, location_code, quantity) values(?,?,?)",
                 item.getProductId(), item.getLocationCode(), item.getQuantity());
+        itemsInserted.increment(rows);
+        return rows;
     }
 
     @Override
     public int update(Item item) throws DataAccessException {
-        return jdbcTemplate.update(
+        itemCache.written(item.getProductId());
+        int rows = jdbcTemplate.update(
                 "update item set quantity = ? where product_id = ? and location_code = ?",
                 item.getQuantity(), item.getProductId(), item.getLocationCode());
+        itemsUpdated.increment(rows);
+        return rows;
     }
 
     @Override
     public void save(Item item) throws DataAccessException {
-        if (update(item) == 0) insert(item);
+        if (update(item) == 0) {
+            itemFallbacks.increment();
+            insert(item);
+        }
     }
 
     @Override
     public Item findItem(String productId, String locationCode) throws DataAccessException {
+        List<Item> cached = itemCache.get(productId);
+        if (cached != null) {
+            for (Item item : cached) {
+                if (item.getLocationCode().equals(locationCode)) return item;
+            }
+            return null;
+        }
         try {
             return jdbcTemplate.queryForObject(
                     "select * from item where product_id = ? and location_code = ?",
@@ -160,13 +434,161 @@ public class JdbcStockRepository implements StockRepository {
         }
     }
 
+    /**
+     * Items of products, served from the item cache where possible. Products that are not cached are loaded in
+     * chunks, see <code>chunk</code>, and cached. Outside a transaction the chunks are queried concurrently on a pool
+     * of <code>sms.query.parallelism</code> threads; within a transaction they are queried one after the other on its
+     * connection.
+     *
+     * @return items ordered by product id and location code, as the database orders them, see
+     * <code>collationOrder</code>
+     */
     @Override
     public List<Item> findItems(List<String> productIds) throws DataAccessException {
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate.getDataSource());
-        SqlParameterSource namedParameters = new MapSqlParameterSource("productIds", productIds);
-        List<Item> items = namedParameterJdbcTemplate.query(
-                "select * from item where product_id in (:productIds) order by product_id, location_code ",
-                namedParameters,
+        Map<String, List<Item>> itemsByProduct = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String productId : new LinkedHashSet<>(productIds)) {
+            List<Item> cached = itemCache.get(productId);
+            itemsByProduct.put(productId, cached);
+            if (cached == null) missing.add(productId);
+        }
+
+        if (!missing.isEmpty()) {
+            long token = itemCache.loading();
+            long start = System.nanoTime();
+            List<Item> loaded = queryChunks(
+                    "select * from item where product_id in (:ids) order by product_id, location_code",
+                    missing, ITEM_ROW_MAPPER);
+            itemCache.recordLoad(System.nanoTime() - start);
+
+            // the database may return a product id that differs from the requested one, for instance in case
+            Map<String, List<Item>> loadedByProduct = new LinkedHashMap<>();
+            Map<String, String> loadedByKey = new HashMap<>();
+            for (Item item : loaded) {
+                loadedByProduct.computeIfAbsent(item.getProductId(), productId -> {
+                    loadedByKey.put(comparisonKey(productId), productId);
+                    return new ArrayList<>();
+                }).add(item);
+            }
+            for (String productId : missing) {
+                List<Item> productItems = loadedByProduct.remove(productId);
+                if (productItems != null) {
+                    itemsByProduct.put(productId, productItems);
+                    itemCache.put(token, productId, productItems);
+                    continue;
+                }
+                String loadedId = loadedByKey.get(comparisonKey(productId));
+                productItems = loadedId == null ? null : loadedByProduct.remove(loadedId);
+                if (productItems != null) {
+                    // cached only under the id the database returned, which writes invalidate
+                    itemsByProduct.put(productId, productItems);
+                } else {
+                    itemsByProduct.put(productId, new ArrayList<>());
+                    if (loadedId == null) itemCache.put(token, productId, new ArrayList<>());
+                }
+            }
+            itemsByProduct.putAll(loadedByProduct);
+        }
+
+        List<Item> items = new ArrayList<>();
+        for (List<Item> productItems : itemsByProduct.values()) {
+            items.addAll(productItems);
+        }
+        items.sort(collationOrder());
+        return items;
+    }
+
+    /**
+     * Order of items by product id and location code under SQL Server's default collation, which ignores case and
+     * trailing spaces, so that chunks and cached items merge in the order of a single <code>order by</code>.
+     */
+    private static Comparator<Item> collationOrder() {
+        Collator collator = Collator.getInstance(Locale.ROOT);
+        collator.setStrength(Collator.SECONDARY);
+        Comparator<String> collation = (a, b) -> collator.compare(trimTrailing(a), trimTrailing(b));
+        return Comparator.comparing(Item::getProductId, collation).thenComparing(Item::getLocationCode, collation);
+    }
+
+    private static String trimTrailing(String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') end--;
+        return value.substring(0, end);
+    }
+
+    /**
+     * Key under which SQL Server's default collation considers product ids equal, ignoring case and trailing spaces.
+     */
+    private static String comparisonKey(String id) {
+        return trimTrailing(id).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Query ids in chunks, concurrently unless a transaction is active, as one query in a transaction must not wait
+     * for locks that the transaction holds itself.
+     *
+     * @param sql query with an IN list parameter named ids
+     * @return rows of all chunks, in chunk order
+     */
+    private <T> List<T> queryChunks(String sql, List<String> ids, RowMapper<T> rowMapper) {
+        List<List<String>> chunks = chunk(ids);
+        List<T> rows = new ArrayList<>();
+        if (chunks.size() == 1 || queryParallelism <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (List<String> chunk : chunks) {
+                rows.addAll(namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", chunk), rowMapper));
+            }
+            return rows;
+        }
+
+        List<Future<List<T>>> results = new ArrayList<>(chunks.size());
+        for (List<String> chunk : chunks) {
+            results.add(queryExecutor.submit(() ->
+                    namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", chunk), rowMapper)));
+        }
+        try {
+            for (Future<List<T>> result : results) {
+                rows.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying " + ids.size() + " ids", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DataAccessException) throw (DataAccessException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<List<T>> result : results) {
+                result.cancel(true);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Split distinct ids into IN lists of at most <code>MAX_IN_LIST</code> ids. Each list is padded with its last id
+     * up to the next length of <code>IN_LIST_SIZES</code>, so that the statements use only a few distinct texts and
+     * their plans are reused.
+     */
+    static List<List<String>> chunk(List<String> ids) {
+        List<List<String>> chunks = new ArrayList<>((ids.size() + MAX_IN_LIST - 1) / MAX_IN_LIST);
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            List<String> chunk = new ArrayList<>(ids.subList(from, Math.min(ids.size(), from + MAX_IN_LIST)));
+            int size = MAX_IN_LIST;
+            for (int candidate : IN_LIST_SIZES) {
+                if (candidate >= chunk.size()) {
+                    size = candidate;
+                    break;
+                }
+            }
+            String last = chunk.get(chunk.size() - 1);
+            while (chunk.size() < size) chunk.add(last);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @Override
+    public List<Item> findAllItems() throws DataAccessException {
+        List<Item> items = jdbcTemplate.query(
+                "select * from item order by product_id, location_code",
                 (rs, rowNum) ->
                         new Item(
                                 rs.getString("product_id"),
@@ -178,29 +600,372 @@ public class JdbcStockRepository implements StockRepository {
         return items;
     }
 
+    /**
+     * Find the next page of items in the order of <code>findAllItems</code>, seeking past the last item of the
+     * previous page on the (product_id, location_code) key instead of skipping rows.
+     *
+     * @param productId    product id of the last item of the previous page, null for the first page
+     * @param locationCode location code of the last item of the previous page
+     * @param limit        maximum number of items to return
+     */
     @Override
-    public List<Item> findAllItems() throws DataAccessException {
-        List<Item> items = jdbcTemplate.query(
-                "select * from item order by product_id, location_code",
-                (rs, rowNum) ->
+    public List<Item> findItemsAfter(String productId, String locationCode, int limit) throws DataAccessException {
+        RowMapper<Item> rowMapper = (rs, rowNum) ->
+                new Item(
+                        rs.getString("product_id"),
+                        rs.getString("location_code"),
+                        rs.getInt("quantity")
+                );
+        List<Item> items;
+        if (productId == null) {
+            items = jdbcTemplate.query(
+                    "select * from item order by product_id, location_code offset 0 rows fetch next ? rows only",
+                    new Object[]{limit},
+                    rowMapper);
+        } else {
+            items = jdbcTemplate.query(
+                    "select * from item where product_id >= ? and (product_id > ? or location_code > ?) " +
+                            "order by product_id, location_code offset 0 rows fetch next ? rows only",
+                    new Object[]{productId, productId, locationCode, limit},
+                    rowMapper);
+        }
+        if (items == null) items = new ArrayList<>();
+        return items;
+    }
+
+    /**
+     * Walk all items with the name of their product, in the order of <code>findAllItems</code>, reading the rows
+     * through a forward-only cursor <code>sms.stream.fetch-size</code> rows at a time instead of loading them all.
+     *
+     * @param handler receives each item and the name of its product, or null when the product does not exist
+     */
+    @Override
+    public void forEachItem(BiConsumer<Item, String> handler) throws DataAccessException {
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "select i.product_id, i.location_code, i.quantity, p.name as product_name " +
+                                    "from item i left join product p on p.id = i.product_id " +
+                                    "order by i.product_id, i.location_code",
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(streamFetchSize);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> handler.accept(
                         new Item(
                                 rs.getString("product_id"),
                                 rs.getString("location_code"),
                                 rs.getInt("quantity")
-                        )
+                        ),
+                        rs.getString("product_name"))
         );
-        if (items == null) items = new ArrayList<>();
-        return items;
     }
 
     @Override
     public int addQuantity(Item item) throws DataAccessException {
+        itemCache.written(item.getProductId());
         if (jdbcTemplate.update(
                 "update item set quantity = quantity + ? where product_id = ? and location_code = ?",
                 item.getQuantity(), item.getProductId(), item.getLocationCode()) == 1) {
+            itemsUpdated.increment();
             return 1;
         } else {
+            itemFallbacks.increment();
             return insert(item);
         }
     }
+
+    /**
+     * Batched version of <code>addQuantity</code>. All quantities are first sent as one batch of updates, items
+     * that did not exist yet are then inserted with a second batch. Items for the same product and location
+     * that both miss the update are merged before inserting.
+     *
+     * @param items quantity changes to apply
+     * @return number of rows updated or inserted
+     */
+    @Override
+    public int addQuantities(List<Item> items) throws DataAccessException {
+        if (items.isEmpty()) return 0;
+        Set<String> productIds = new HashSet<>();
+        for (Item item : items) {
+            productIds.add(item.getProductId());
+        }
+        itemCache.written(productIds);
+        int[] counts = jdbcTemplate.batchUpdate(
+                "update item set quantity = quantity + ? where product_id = ? and location_code = ?",
+                new ItemBatchSetter(items));
+
+        int rows = 0;
+        Map<Item, Item> missing = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            Item item = items.get(i);
+            if (updated(counts[i], item)) {
+                rows++;
+                continue;
+            }
+            Item merged = missing.get(item);
+            if (merged == null) {
+                missing.put(item, new Item(item.getProductId(), item.getLocationCode(), item.getQuantity()));
+            } else {
+                merged.setQuantity(merged.getQuantity() + item.getQuantity());
+            }
+        }
+        itemsUpdated.increment(rows);
+        if (missing.isEmpty()) return rows;
+
+        List<Item> inserts = new ArrayList<>(missing.values());
+        insertMissing(inserts);
+        itemsInserted.increment(inserts.size());
+        itemFallbacks.increment(inserts.size());
+        return rows + inserts.size();
+    }
+
+    /**
+     * Insert the items that a batch of updates did not find. As they did not exist, a duplicate key means another
+     * writer inserted them meanwhile, which is reported as a concurrency failure so the write is retried as a whole.
+     */
+    private void insertMissing(List<Item> inserts) {
+        try {
+            jdbcTemplate.batchUpdate(
+                    "insert into item (quantity, product_id, location_code) values(?,?,?)",
+                    new ItemBatchSetter(inserts));
+        } catch (DuplicateKeyException e) {
+            throw insertedConcurrently("Items", e);
+        }
+    }
+
+    private static ConcurrencyFailureException insertedConcurrently(String rows, DuplicateKeyException e) {
+        return new ConcurrencyFailureException(rows + " were inserted concurrently; "
+                + e.getMostSpecificCause().getMessage(), e);
+    }
+
+    /**
+     * Whether the update of <code>item</code> in a batch matched its row. A driver reporting SUCCESS_NO_INFO leaves
+     * this unknown, so the row is then looked up within the same transaction instead of being assumed updated.
+     */
+    private boolean updated(int count, Item item) {
+        if (count != Statement.SUCCESS_NO_INFO) return count > 0;
+        Integer rows = jdbcTemplate.queryForObject(
+                "select count(*) from item where product_id = ? and location_code = ?",
+                Integer.class, item.getProductId(), item.getLocationCode());
+        return rows != null && rows > 0;
+    }
+
+    /**
+     * Set the quantity of items, adding the items that do not exist yet. When the same product and location occurs
+     * more than once, the last quantity wins. On SQL Server, lists of at least <code>sms.merge.bulk-threshold</code>
+     * items are bulk copied into a temporary table and applied with one MERGE; otherwise they are sent as one batch
+     * of updates followed by one batch of inserts for the items that were not updated.
+     *
+     * @param items stock levels to set
+     * @return number of rows updated or inserted
+     */
+    @Override
+    public int mergeItems(List<Item> items) throws DataAccessException {
+        if (items.isEmpty()) return 0;
+        Map<Item, Item> distinct = new LinkedHashMap<>();
+        Set<String> productIds = new HashSet<>();
+        for (Item item : items) {
+            distinct.remove(item);
+            distinct.put(item, item);
+            productIds.add(item.getProductId());
+        }
+        List<Item> levels = new ArrayList<>(distinct.values());
+        itemCache.written(productIds);
+
+        if (useBulkCopy(levels.size())) {
+            List<Object[]> rows = new ArrayList<>(levels.size());
+            for (Item item : levels) {
+                rows.add(new Object[]{item.getProductId(), item.getLocationCode(), item.getQuantity()});
+            }
+            return jdbcTemplate.execute((ConnectionCallback<Integer>) con -> {
+                stage(con, "#stage_item", "item", new String[]{"product_id", "location_code", "quantity"},
+                        new int[]{Types.VARCHAR, Types.VARCHAR, Types.INTEGER}, rows);
+                int updated = 0;
+                int inserted = 0;
+                try (Statement statement = con.createStatement();
+                     ResultSet rs = statement.executeQuery(
+                             "merge item with (holdlock) as t using #stage_item as s " +
+                                     "on t.product_id = s.product_id and t.location_code = s.location_code " +
+                                     "when matched then update set quantity = s.quantity " +
+                                     "when not matched then insert (product_id, location_code, quantity) " +
+                                     "values (s.product_id, s.location_code, s.quantity) " +
+                                     "output $action;")) {
+                    while (rs.next()) {
+                        if ("INSERT".equals(rs.getString(1))) inserted++;
+                        else updated++;
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    drop(con, "#stage_item", e);
+                    throw e;
+                }
+                drop(con, "#stage_item");
+                itemsUpdated.increment(updated);
+                itemsInserted.increment(inserted);
+                return updated + inserted;
+            });
+        }
+
+        int[] counts = jdbcTemplate.batchUpdate(
+                "update item set quantity = ? where product_id = ? and location_code = ?",
+                new ItemBatchSetter(levels));
+        int rows = 0;
+        List<Item> inserts = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (updated(counts[i], levels.get(i))) {
+                rows++;
+            } else {
+                inserts.add(levels.get(i));
+            }
+        }
+        itemsUpdated.increment(rows);
+        if (inserts.isEmpty()) return rows;
+        insertMissing(inserts);
+        itemsInserted.increment(inserts.size());
+        itemFallbacks.increment(inserts.size());
+        return rows + inserts.size();
+    }
+
+    /**
+     * Insert new items in bulk, with a bulk copy on SQL Server for lists of at least
+     * <code>sms.merge.bulk-threshold</code> items and with one batch of inserts otherwise.
+     *
+     * @param items items that do not exist yet
+     * @return number of items inserted
+     */
+    @Override
+    public int insertItems(List<Item> items) throws DataAccessException {
+        if (items.isEmpty()) return 0;
+        Set<String> productIds = new HashSet<>();
+        List<Object[]> rows = new ArrayList<>(items.size());
+        for (Item item : items) {
+            productIds.add(item.getProductId());
+            rows.add(new Object[]{item.getProductId(), item.getLocationCode(), item.getQuantity()});
+        }
+        itemCache.written(productIds);
+        bulkInsert("item", new String[]{"product_id", "location_code", "quantity"},
+                new int[]{Types.VARCHAR, Types.VARCHAR, Types.INTEGER}, rows);
+        itemsInserted.increment(items.size());
+        return items.size();
+    }
+
+    /**
+     * Create the stock_ledger table, holding the last journal each stock ledger flushed, when it does not exist.
+     */
+    @Override
+    public void createLedgerTable() throws DataAccessException {
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            DatabaseMetaData metaData = con.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "STOCK_LEDGER" : "stock_ledger";
+            try (ResultSet rs = metaData.getTables(null, null, table, null)) {
+                if (rs.next()) return null;
+            }
+            try (Statement statement = con.createStatement()) {
+                statement.execute("create table stock_ledger (name varchar(50) not null, flushed bigint not null, " +
+                        "constraint pk_stock_ledger primary key (name))");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return number of the last journal of <code>ledger</code> whose changes are committed, 0 when there is none
+     */
+    @Override
+    public long findLedgerWatermark(String ledger) throws DataAccessException {
+        List<Long> flushed = jdbcTemplate.queryForList(
+                "select flushed from stock_ledger where name = ?", new Object[]{ledger}, Long.class);
+        return flushed.isEmpty() ? 0 : flushed.get(0);
+    }
+
+    @Override
+    public void saveLedgerWatermark(String ledger, long flushed) throws DataAccessException {
+        if (jdbcTemplate.update("update stock_ledger set flushed = ? where name = ?", flushed, ledger) == 0) {
+            jdbcTemplate.update("insert into stock_ledger (name, flushed) values(?,?)", ledger, flushed);
+        }
+    }
+
+    private void bulkInsert(String table, String[] columns, int[] types, List<Object[]> rows) {
+        if (useBulkCopy(rows.size())) {
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                SqlServerBulkCopy.copy(con, table, columns, types, rows, 0);
+                return null;
+            });
+        } else {
+            StringBuilder placeholders = new StringBuilder("?");
+            for (int i = 1; i < columns.length; i++) placeholders.append(",?");
+            jdbcTemplate.batchUpdate(
+                    "insert into " + table + " (" + String.join(", ", columns) + ") values(" + placeholders + ")",
+                    rows, types);
+        }
+    }
+
+    private boolean useBulkCopy(int size) {
+        if (size < mergeBulkThreshold) return false;
+        if (bulkCopySupported == null) {
+            bulkCopySupported = jdbcTemplate.execute((ConnectionCallback<Boolean>) SqlServerBulkCopy::supports);
+        }
+        return bulkCopySupported;
+    }
+
+    /**
+     * Create an empty temporary table with the columns of <code>table</code> and bulk copy rows into it.
+     */
+    private static void stage(Connection con, String stage, String table, String[] columns, int[] types,
+                              List<Object[]> rows) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute("select top 0 " + String.join(", ", columns) + " into " + stage + " from " + table);
+        }
+        try {
+            SqlServerBulkCopy.copy(con, stage, columns, types, rows, 0);
+        } catch (SQLException | RuntimeException e) {
+            drop(con, stage, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop a temporary table if it still exists; a deadlock victim's rollback already dropped it.
+     */
+    private static void drop(Connection con, String stage) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute("if object_id('tempdb.." + stage + "') is not null drop table " + stage);
+        }
+    }
+
+    /**
+     * Drop a temporary table after <code>failure</code>, adding a failure to drop it as suppressed so that
+     * <code>failure</code>, for instance a deadlock that is retried, is the one that propagates.
+     */
+    private static void drop(Connection con, String stage, Exception failure) {
+        try {
+            drop(con, stage);
+        } catch (SQLException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Binds quantity, product id and location code, in that order, for each item of a batch.
+     */
+    private static class ItemBatchSetter implements BatchPreparedStatementSetter {
+        private final List<Item> items;
+
+        ItemBatchSetter(List<Item> items) {
+            this.items = items;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            Item item = items.get(i);
+            ps.setInt(1, item.getQuantity());
+            ps.setString(2, item.getProductId());
+            ps.setString(3, item.getLocationCode());
+        }
+
+        @Override
+        public int getBatchSize() {
+            return items.size();
+        }
+    }
 }
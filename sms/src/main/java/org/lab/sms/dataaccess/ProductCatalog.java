@@ -0,0 +1,98 @@
+package org.lab.sms.dataaccess;
+
+import org.lab.sms.domain.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Cache of products by id, holding at most <code>sms.catalog.max-size</code> products. Products written through
+ * <code>JdbcStockRepository</code> are cached once their transaction commits.
+ * <p/>
+ * A product that is not cached may still exist, as products can be added by other instances sharing the database.
+ */
+@Component
+public class ProductCatalog {
+
+    @Value("${sms.catalog.max-size:500000}")
+    int maxSize;
+
+    private BoundedCache<String, Product> products;
+
+    @PostConstruct
+    void start() {
+        products = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * @return the cached product, or null when it is not cached
+     */
+    public Product get(String id) {
+        return products.get(id);
+    }
+
+    public void put(Product product) {
+        products.put(product.getId(), copy(product));
+    }
+
+    /**
+     * Cache a product that has been inserted or updated, after the current transaction commits.
+     */
+    public void written(Product product) {
+        Product written = copy(product);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    products.put(written.getId(), written);
+                }
+            });
+        } else {
+            products.put(written.getId(), written);
+        }
+    }
+
+    /**
+     * Cache all products, as far as they fit.
+     *
+     * @param allProducts every product, in the order they should be cached
+     */
+    public void warm(List<Product> allProducts) {
+        for (Product product : allProducts) {
+            put(product);
+        }
+    }
+
+    public void clear() {
+        products.clear();
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    public long getHits() {
+        return products.getHits();
+    }
+
+    public long getMisses() {
+        return products.getMisses();
+    }
+
+    public long getEvictions() {
+        return products.getEvictions();
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats("products", products.size(), maxSize, products.getHits(), products.getMisses(),
+                products.getEvictions(), products.getExpirations(), 0, 0);
+    }
+
+    private static Product copy(Product product) {
+        return new Product(product.getId(), product.getName());
+    }
+}
@@ -0,0 +1,174 @@
+package org.lab.sms.dataaccess;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Data source handing out connections whose statements report each execution to the statement profiler. Updates
+ * and batches are recorded when they return, queries when their result set is closed, so the time spent fetching
+ * rows is included.
+ * <p/>
+ * <code>unwrap</code> returns the driver objects, which are not profiled.
+ */
+class ProfilingDataSource extends DelegatingDataSource {
+
+    private final StatementProfiler profiler;
+
+    ProfilingDataSource(DataSource target, StatementProfiler profiler) {
+        super(target);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return profile(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return profile(super.getConnection(username, password));
+    }
+
+    private Connection profile(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                Class<? extends Statement> type = result instanceof CallableStatement ? CallableStatement.class
+                        : result instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+                return profile(type, (Statement) result, sql);
+            }
+            return result;
+        });
+    }
+
+    private <T extends Statement> T profile(Class<T> type, Statement statement, String preparedSql) {
+        return proxy(type, statement, new StatementHandler(statement, preparedSql));
+    }
+
+    /**
+     * Counts the parameters bound to a statement and records its executions.
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        private int binds;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && method.getDeclaringClass() != Statement.class) {
+                binds++;
+                return ProfilingDataSource.invoke(statement, method, args);
+            }
+            if (!name.startsWith("execute")) {
+                return ProfilingDataSource.invoke(statement, method, args);
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            int bound = binds;
+            binds = 0;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = ProfilingDataSource.invoke(statement, method, args);
+            } catch (SQLException e) {
+                profiler.record(sql, System.nanoTime() - start, 0, bound, statement.getFetchSize());
+                throw e;
+            }
+            if (result instanceof ResultSet) {
+                return proxy(ResultSet.class, result, new ResultSetHandler((ResultSet) result, sql, start, bound,
+                        statement.getFetchSize()));
+            }
+            profiler.record(sql, System.nanoTime() - start, rows(result), bound, statement.getFetchSize());
+            return result;
+        }
+
+        private long rows(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return Math.max(0, ((Number) result).longValue());
+            }
+            long rows = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) rows += Math.max(0, count);
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) rows += Math.max(0, count);
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Counts the rows read from a query result and records the query when the result is closed.
+     */
+    private class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final String sql;
+        private final long start;
+        private final int binds;
+        private final int fetchSize;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet resultSet, String sql, long start, int binds, int fetchSize) {
+            this.resultSet = resultSet;
+            this.sql = sql;
+            this.start = start;
+            this.binds = binds;
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = ProfilingDataSource.invoke(resultSet, method, args);
+            if (method.getName().equals("next")) {
+                if (Boolean.TRUE.equals(result)) rows++;
+            } else if (method.getName().equals("close") && !recorded) {
+                recorded = true;
+                profiler.record(sql, System.nanoTime() - start, rows, binds, fetchSize);
+            }
+            return result;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ProfilingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "unwrap":
+                            return type.equals(args[0]) ? proxy : invoke(target, method, args);
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return handler.invoke(proxy, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
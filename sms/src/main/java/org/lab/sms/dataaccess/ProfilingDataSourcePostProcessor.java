@@ -0,0 +1,27 @@
+package org.lab.sms.dataaccess;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the data source in a <code>ProfilingDataSource</code> when <code>sms.profiler.enabled</code> is set, so every
+ * statement sent through the <code>JdbcTemplate</code> is profiled.
+ */
+@Component
+public class ProfilingDataSourcePostProcessor implements BeanPostProcessor {
+
+    // looked up when the data source is created, so the profiler is not created along with the post processors
+    @Autowired
+    private ObjectProvider<StatementProfiler> statementProfiler;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource) || bean instanceof ProfilingDataSource) return bean;
+        StatementProfiler profiler = statementProfiler.getObject();
+        return profiler.isEnabled() ? new ProfilingDataSource((DataSource) bean, profiler) : bean;
+    }
+}
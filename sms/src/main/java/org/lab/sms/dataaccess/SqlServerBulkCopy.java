@@ -0,0 +1,173 @@
+package org.lab.sms.dataaccess;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkRecord;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams rows into a SQL Server table with the bulk copy protocol, which is much faster than inserting them with
+ * batched statements. The rows are read from a list while they are sent, so no copy of them is made.
+ */
+class SqlServerBulkCopy {
+
+    private SqlServerBulkCopy() {
+    }
+
+    /**
+     * @return true when <code>connection</code> is a SQL Server connection
+     */
+    static boolean supports(Connection connection) throws SQLException {
+        return connection.isWrapperFor(SQLServerConnection.class);
+    }
+
+    /**
+     * Copy rows into a table.
+     *
+     * @param connection SQL Server connection, possibly wrapped by a pool
+     * @param table      destination table, may be a temporary table of the connection; its constraints are checked
+     * @param columns    destination column of each row value
+     * @param types      <code>java.sql.Types</code> of each row value
+     * @param rows       rows to copy
+     * @param batchSize  rows per committed batch, 0 to copy all rows in one batch
+     */
+    static void copy(Connection connection, String table, String[] columns, int[] types, List<Object[]> rows,
+                     int batchSize) throws SQLException {
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setBatchSize(batchSize);
+        options.setBulkCopyTimeout(0);
+        options.setCheckConstraints(true);
+        try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection.unwrap(SQLServerConnection.class))) {
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.setDestinationTableName(table);
+            for (int i = 0; i < columns.length; i++) {
+                bulkCopy.addColumnMapping(i + 1, columns[i]);
+            }
+            bulkCopy.writeToServer(new Rows(columns, types, rows));
+        }
+    }
+
+    /**
+     * Rows of a list as a bulk copy source.
+     */
+    private static class Rows implements ISQLServerBulkRecord {
+        private final String[] columns;
+        private final int[] types;
+        private final int[] precisions;
+        private final int[] scales;
+        private final DateTimeFormatter[] formatters;
+        private final Iterator<Object[]> rows;
+        private Object[] row;
+        private DateTimeFormatter timestampWithTimezoneFormatter;
+        private DateTimeFormatter timeWithTimezoneFormatter;
+
+        Rows(String[] columns, int[] types, List<Object[]> rows) {
+            this.columns = columns.clone();
+            this.types = types.clone();
+            this.precisions = new int[columns.length];
+            this.scales = new int[columns.length];
+            this.formatters = new DateTimeFormatter[columns.length];
+            this.rows = rows.iterator();
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinals = new LinkedHashSet<>();
+            for (int i = 1; i <= columns.length; i++) ordinals.add(i);
+            return ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column - 1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return types[column - 1];
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return precisions[column - 1];
+        }
+
+        @Override
+        public int getScale(int column) {
+            return scales[column - 1];
+        }
+
+        @Override
+        public boolean isAutoIncrement(int column) {
+            return false;
+        }
+
+        @Override
+        public Object[] getRowData() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            if (!rows.hasNext()) return false;
+            row = rows.next();
+            return true;
+        }
+
+        // SQLServerBulkCopy only reads the metadata above. The setters below serve record sources that learn their
+        // columns after construction, such as CSV files; the copier never calls them, and they just record what
+        // they are given for the getters.
+
+        @Override
+        public void addColumnMetadata(int column, String name, int type, int precision, int scale,
+                                      DateTimeFormatter dateTimeFormatter) {
+            addColumnMetadata(column, name, type, precision, scale);
+            formatters[column - 1] = dateTimeFormatter;
+        }
+
+        @Override
+        public void addColumnMetadata(int column, String name, int type, int precision, int scale) {
+            columns[column - 1] = name;
+            types[column - 1] = type;
+            precisions[column - 1] = precision;
+            scales[column - 1] = scale;
+        }
+
+        @Override
+        public void setTimestampWithTimezoneFormat(String dateTimeFormat) {
+            setTimestampWithTimezoneFormat(DateTimeFormatter.ofPattern(dateTimeFormat));
+        }
+
+        @Override
+        public void setTimestampWithTimezoneFormat(DateTimeFormatter dateTimeFormatter) {
+            timestampWithTimezoneFormatter = dateTimeFormatter;
+        }
+
+        @Override
+        public void setTimeWithTimezoneFormat(String timeFormat) {
+            setTimeWithTimezoneFormat(DateTimeFormatter.ofPattern(timeFormat));
+        }
+
+        @Override
+        public void setTimeWithTimezoneFormat(DateTimeFormatter dateTimeFormatter) {
+            timeWithTimezoneFormatter = dateTimeFormatter;
+        }
+
+        @Override
+        public DateTimeFormatter getColumnDateTimeFormatter(int column) {
+            if (formatters[column - 1] != null) return formatters[column - 1];
+            if (types[column - 1] == Types.TIMESTAMP_WITH_TIMEZONE) return timestampWithTimezoneFormatter;
+            if (types[column - 1] == Types.TIME_WITH_TIMEZONE) return timeWithTimezoneFormatter;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.lab.sms.dataaccess;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the executions of SQL statements sent through the profiling data source, per statement text. A
+ * statement taking longer than <code>sms.profiler.slow-threshold</code> milliseconds is logged with its rows, bind
+ * count and fetch size. At most <code>sms.profiler.max-statements</code> distinct statement texts are tracked;
+ * executions of other texts are only counted.
+ */
+@Component
+public class StatementProfiler {
+
+    private static final Log logger = LogFactory.getLog(StatementProfiler.class);
+
+    @Value("${sms.profiler.enabled:false}")
+    boolean enabled;
+
+    @Value("${sms.profiler.slow-threshold:500}")
+    long slowThresholdMillis;
+
+    @Value("${sms.profiler.max-statements:1000}")
+    int maxStatements;
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final AtomicLong untracked = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record one execution of a statement.
+     *
+     * @param sql          statement text, null for statements executed without one, such as plain batches
+     * @param elapsedNanos time from executing the statement until its result was consumed
+     * @param rows         rows affected or read
+     * @param binds        parameters bound
+     * @param fetchSize    fetch size of the statement
+     */
+    void record(String sql, long elapsedNanos, long rows, int binds, int fetchSize) {
+        if (sql == null) sql = "(batch)";
+        StatementStats stats = statements.get(sql);
+        if (stats == null) {
+            if (statements.size() < maxStatements) {
+                stats = statements.computeIfAbsent(sql, StatementStats::new);
+            } else {
+                untracked.incrementAndGet();
+            }
+        }
+        if (stats != null) stats.record(elapsedNanos, rows, binds, fetchSize);
+
+        long elapsedMillis = elapsedNanos / 1_000_000;
+        if (elapsedMillis >= slowThresholdMillis && logger.isWarnEnabled()) {
+            logger.warn("Slow statement took " + elapsedMillis + " ms for " + rows + " rows with " + binds
+                    + " binds and fetch size " + fetchSize + " [" + sql + "]");
+        }
+    }
+
+    /**
+     * @param limit maximum number of statements to return
+     * @return statements in order of total elapsed time, most expensive first
+     */
+    public List<StatementStats> getTopStatements(int limit) {
+        List<StatementStats> top = new ArrayList<>(statements.size());
+        for (StatementStats stats : statements.values()) {
+            top.add(stats.copy());
+        }
+        top.sort(Comparator.comparingLong(StatementStats::getTotalNanos).reversed());
+        return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+    }
+
+    /**
+     * @return executions not recorded because <code>sms.profiler.max-statements</code> statements were tracked
+     */
+    public long getUntracked() {
+        return untracked.get();
+    }
+
+    public void reset() {
+        statements.clear();
+        untracked.set(0);
+    }
+}
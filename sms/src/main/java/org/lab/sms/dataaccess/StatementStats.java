@@ -0,0 +1,84 @@
+package org.lab.sms.dataaccess;
+
+/**
+ * Executions, elapsed time and rows of one SQL statement text, as recorded by the statement profiler.
+ */
+public class StatementStats {
+
+    private final String sql;
+    private long executions;
+    private long totalNanos;
+    private long maxNanos;
+    private long rows;
+    private long binds;
+    private int fetchSize;
+
+    StatementStats(String sql) {
+        this.sql = sql;
+    }
+
+    synchronized void record(long elapsedNanos, long rows, int binds, int fetchSize) {
+        executions++;
+        totalNanos += elapsedNanos;
+        maxNanos = Math.max(maxNanos, elapsedNanos);
+        this.rows += rows;
+        this.binds += binds;
+        this.fetchSize = fetchSize;
+    }
+
+    synchronized StatementStats copy() {
+        StatementStats copy = new StatementStats(sql);
+        copy.executions = executions;
+        copy.totalNanos = totalNanos;
+        copy.maxNanos = maxNanos;
+        copy.rows = rows;
+        copy.binds = binds;
+        copy.fetchSize = fetchSize;
+        return copy;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getTotalMillis() {
+        return totalNanos / 1_000_000;
+    }
+
+    public double getAverageMillis() {
+        return executions == 0 ? 0 : totalNanos / 1_000_000.0 / executions;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return rows affected by updates plus rows read by queries, over all executions
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return parameters bound per execution, on average; batches bind the parameters of all their rows
+     */
+    public double getAverageBinds() {
+        return executions == 0 ? 0 : (double) binds / executions;
+    }
+
+    /**
+     * @return fetch size of the last execution, 0 for the driver default
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+}
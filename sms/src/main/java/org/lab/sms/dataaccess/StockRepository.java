@@ -1,14 +1,15 @@
 package org.lab.sms.dataaccess;
 
-import javafx.collections.transformation.SortedList;
 import org.lab.sms.domain.Item;
 import org.lab.sms.domain.Location;
 import org.lab.sms.domain.Product;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 @Repository
 public interface StockRepository {
@@ -23,14 +24,26 @@ public interface StockRepository {
     public int update(Product product) throws DataAccessException;
     public void save(Product product) throws DataAccessException;
     public Product findProduct(String id) throws DataAccessException;
+    public List<Product> findProducts(Collection<String> ids) throws DataAccessException;
     public List<Product> findAllProducts() throws DataAccessException;
+    public int mergeProducts(List<Product> products) throws DataAccessException;
+    public int insertProducts(List<Product> products) throws DataAccessException;
 
     public int insert(Item item) throws DataAccessException;
     public int update(Item item) throws DataAccessException;
     public void save(Item item) throws DataAccessException;
     public int addQuantity(Item item) throws DataAccessException;
+    public int addQuantities(List<Item> items) throws DataAccessException;
+    public int mergeItems(List<Item> items) throws DataAccessException;
+    public int insertItems(List<Item> items) throws DataAccessException;
     public Item findItem(String productId, String locationCode) throws DataAccessException;
     public List<Item> findItems(List<String> productIds) throws DataAccessException;
     public List<Item> findAllItems() throws DataAccessException;
+    public List<Item> findItemsAfter(String productId, String locationCode, int limit) throws DataAccessException;
+    public void forEachItem(BiConsumer<Item, String> handler) throws DataAccessException;
+
+    public void createLedgerTable() throws DataAccessException;
+    public long findLedgerWatermark(String ledger) throws DataAccessException;
+    public void saveLedgerWatermark(String ledger, long flushed) throws DataAccessException;
 
 }
@@ -0,0 +1,66 @@
+package org.lab.sms.domain;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Bean property read through its getter. The getter is resolved once into a method handle, so reading the property
+ * costs a direct call instead of a reflective lookup and invocation.
+ */
+final class BeanProperty {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String name;
+    private final MethodHandle getter;
+
+    private BeanProperty(String name, MethodHandle getter) {
+        this.name = name;
+        this.getter = getter;
+    }
+
+    /**
+     * Resolve the getter of the property backed by <code>field</code>, falling back to the field itself when the
+     * property has no getter.
+     */
+    static BeanProperty of(Class<?> clazz, Field field) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle getter = null;
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                Method readMethod = descriptor.getReadMethod();
+                if (descriptor.getName().equals(field.getName()) && readMethod != null) {
+                    readMethod.setAccessible(true);
+                    getter = lookup.unreflect(readMethod);
+                }
+            }
+            if (getter == null) {
+                field.setAccessible(true);
+                getter = lookup.unreflectGetter(field);
+            }
+            return new BeanProperty(field.getName(), getter.asType(GETTER_TYPE));
+        } catch (IntrospectionException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read property '" + field.getName() + "' of " + clazz.getName(), e);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Object get(Object bean) {
+        try {
+            return getter.invokeExact(bean);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Error getting property '" + name + "' value", t);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.lab.sms.domain;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -8,16 +7,16 @@ import java.io.Serializable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
- * CommonBean class defines shared functionality among all javabean classes.
+ * CommonBean class defines shared functionality among all javabean classes. Annotated properties are read through
+ * getters resolved once per class, see {@link BeanProperty}.
  */
 public abstract class CommonBean<T> implements Serializable, Comparable<T>, Cloneable {
 
-    private Log logger = LogFactory.getLog(this.getClass());
+    private static final Log logger = LogFactory.getLog(CommonBean.class);
     private static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
 
     /**
@@ -58,17 +57,73 @@ public abstract class CommonBean<T> implements Serializable, Comparable<T>, Clon
     public @interface Info {
     }
 
-    private static Map<String, Fields> annotatedFieldsMap = new HashMap<String, Fields>();
+    // Annotation metadata per bean class, computed once and safe to read from any thread
+    private static final ClassValue<Fields> annotatedFieldsMap = new ClassValue<Fields>() {
+        @Override
+        protected Fields computeValue(Class<?> clazz) {
+            return new Fields(clazz);
+        }
+    };
 
-    private static class Fields {
-        List<Field> keyFields;
-        List<Field> requiredFields;
-        List<Field> infoFields;
+    /**
+     * Immutable <code>@Key</code>, <code>@Required</code> and <code>@Info</code> fields of a class, with their
+     * accessors.
+     */
+    private static final class Fields {
+        final List<Field> keyFields;
+        final List<Field> requiredFields;
+        final List<Field> infoFields;
+        final List<BeanProperty> keyProperties;
+        // key and required properties, checked by validate
+        final List<BeanProperty> validatedProperties;
+        // key, required and info properties, shown by toString
+        final List<BeanProperty> describedProperties;
+
+        Fields(Class<?> clazz) {
+            List<Field> keyFields = new ArrayList<Field>();
+            List<Field> requiredFields = new ArrayList<Field>();
+            List<Field> infoFields = new ArrayList<Field>();
 
-        public Fields(List<Field> keyFields, List<Field> requiredFields, List<Field> infoFields) {
-            this.keyFields = keyFields;
-            this.requiredFields = requiredFields;
-            this.infoFields = infoFields;
+            for (Field field : clazz.getDeclaredFields()) {
+                Key key = field.getAnnotation(Key.class);
+                if (key != null) {
+                    keyFields.add(field);
+                }
+                if (field.getAnnotation(Required.class) != null) {
+                    if (!keyFields.contains(field)) {
+                        requiredFields.add(field);
+                    }
+                }
+                if (field.getAnnotation(Info.class) != null) {
+                    if (!keyFields.contains(field) && !requiredFields.contains(field)) {
+                        infoFields.add(field);
+                    }
+                }
+            }
+
+            // Put key fields in proper order, fields of equal order stay in declaration order
+            keyFields.sort(Comparator.comparingInt(field -> field.getAnnotation(Key.class).order()));
+
+            this.keyFields = Collections.unmodifiableList(keyFields);
+            this.requiredFields = Collections.unmodifiableList(requiredFields);
+            this.infoFields = Collections.unmodifiableList(infoFields);
+
+            List<BeanProperty> keyProperties = properties(clazz, keyFields);
+            List<BeanProperty> validatedProperties = new ArrayList<BeanProperty>(keyProperties);
+            validatedProperties.addAll(properties(clazz, requiredFields));
+            List<BeanProperty> describedProperties = new ArrayList<BeanProperty>(validatedProperties);
+            describedProperties.addAll(properties(clazz, infoFields));
+            this.keyProperties = Collections.unmodifiableList(keyProperties);
+            this.validatedProperties = Collections.unmodifiableList(validatedProperties);
+            this.describedProperties = Collections.unmodifiableList(describedProperties);
+        }
+
+        private static List<BeanProperty> properties(Class<?> clazz, List<Field> fields) {
+            List<BeanProperty> properties = new ArrayList<BeanProperty>();
+            for (Field field : fields) {
+                properties.add(BeanProperty.of(clazz, field));
+            }
+            return properties;
         }
     }
 
@@ -80,23 +135,16 @@ public abstract class CommonBean<T> implements Serializable, Comparable<T>, Clon
      */
     public boolean equals(Object obj) {
 
-        if (obj == null) return false;
-
-        List<Field> fields = getAnnotatedFields(this.getClass()).keyFields;
+        if (obj == this) return true;
+        if (obj == null || obj.getClass() != this.getClass()) return false;
 
-        StringBuffer buf = new StringBuffer();
-
-        for (Field field : fields) {
-            try {
-                Object thisValue = PropertyUtils.getSimpleProperty(this, field.getName());
-                Object objValue = PropertyUtils.getSimpleProperty(obj, field.getName());
-                if (thisValue == null) {
-                    if (objValue != null) return false;
-                } else if (objValue == null || !thisValue.equals(objValue)) {
-                    return false;
-                }
-            } catch (Exception e) {
-                buf.append("[" + e.getClass().getName() + ":" + e.getMessage() + "]");
+        for (BeanProperty property : getAnnotatedFields(this.getClass()).keyProperties) {
+            Object thisValue = property.get(this);
+            Object objValue = property.get(obj);
+            if (thisValue == null) {
+                if (objValue != null) return false;
+            } else if (objValue == null || !thisValue.equals(objValue)) {
+                return false;
             }
         }
 
@@ -111,40 +159,38 @@ public abstract class CommonBean<T> implements Serializable, Comparable<T>, Clon
     public int hashCode() {
 
         int hashCode = 0;
-        List<Field> fields = getAnnotatedFields(this.getClass()).keyFields;
 
-        for (Field field : fields) {
-            try {
-                Object thisValue = PropertyUtils.getSimpleProperty(this, field.getName());
-                // If the field f is a boolean: calculate (f ? 0 : 1);
-                // If the field f is a byte, char, short or int: calculate (int)f;
-                // If the field f is a long: calculate (int)(f ^ (f >>> 32));
-                // If the field f is a float: calculate Float.floatToIntBits(f);
-                // If the field f is a double: calculate Double.doubleToLongBits(f) and handle the return value like every long value;
-                // If the field f is an object: Use the result of the hashCode() method or 0 if f == null;
-                // If the field f is an array: See every field as separate element and calculate the hash value in a recursive fashion and combine the values as described next.
-                int hashValue = 0;
-                if (thisValue instanceof Boolean) {
-                    hashValue = ((Boolean) thisValue).booleanValue() ? 0 : 1;
-                } else if (thisValue instanceof Byte) {
-                    hashValue = ((Byte) thisValue).intValue();
-                } else if (thisValue instanceof Short) {
-                    hashValue = ((Short) thisValue).intValue();
-                } else if (thisValue instanceof Integer) {
-                    hashValue = ((Integer) thisValue).intValue();
-                } else if (thisValue instanceof Long) {
-                    hashValue = (int) (((Long) thisValue).longValue() ^ (((Long) thisValue).longValue() >>> 32));
-                } else if (thisValue instanceof Float) {
-                    hashValue = Float.floatToIntBits((Float) thisValue);
-                } else if (thisValue instanceof Double) {
-                    hashValue = (int) Double.doubleToLongBits((Float) thisValue);
-                } else {
-                    hashValue = thisValue.hashCode();
-                }
-                hashCode = 37 * hashCode + hashValue;
-            } catch (Exception e) {
-                logger.error(e.getClass().getName() + " - " + e.getMessage());
+        for (BeanProperty property : getAnnotatedFields(this.getClass()).keyProperties) {
+            Object thisValue = property.get(this);
+            // If the field f is a boolean: calculate (f ? 0 : 1);
+            // If the field f is a byte, char, short or int: calculate (int)f;
+            // If the field f is a long: calculate (int)(f ^ (f >>> 32));
+            // If the field f is a float: calculate Float.floatToIntBits(f);
+            // If the field f is a double: calculate Double.doubleToLongBits(f) and handle the return value like every long value;
+            // If the field f is an object: Use the result of the hashCode() method or 0 if f == null;
+            // If the field f is an array: See every field as separate element and calculate the hash value in a recursive fashion and combine the values as described next.
+            int hashValue;
+            if (thisValue == null) {
+                hashValue = 0;
+            } else if (thisValue instanceof Boolean) {
+                hashValue = ((Boolean) thisValue).booleanValue() ? 0 : 1;
+            } else if (thisValue instanceof Byte) {
+                hashValue = ((Byte) thisValue).intValue();
+            } else if (thisValue instanceof Short) {
+                hashValue = ((Short) thisValue).intValue();
+            } else if (thisValue instanceof Integer) {
+                hashValue = ((Integer) thisValue).intValue();
+            } else if (thisValue instanceof Long) {
+                hashValue = (int) (((Long) thisValue).longValue() ^ (((Long) thisValue).longValue() >>> 32));
+            } else if (thisValue instanceof Float) {
+                hashValue = Float.floatToIntBits((Float) thisValue);
+            } else if (thisValue instanceof Double) {
+                long bits = Double.doubleToLongBits((Double) thisValue);
+                hashValue = (int) (bits ^ (bits >>> 32));
+            } else {
+                hashValue = thisValue.hashCode();
             }
+            hashCode = 37 * hashCode + hashValue;
         }
 
         return hashCode;
@@ -164,34 +210,24 @@ public abstract class CommonBean<T> implements Serializable, Comparable<T>, Clon
 
         if (equals(obj)) return 0;
 
-        List<Field> fields = getAnnotatedFields(this.getClass()).keyFields;
-        for (Field field : fields) {
+        for (BeanProperty property : getAnnotatedFields(this.getClass()).keyProperties) {
             try {
-                Object thisValue = PropertyUtils.getProperty(this, field.getName());
-                Object objValue = PropertyUtils.getProperty(obj, field.getName());
+                Object thisValue = property.get(this);
+                Object objValue = property.get(obj);
                 if (thisValue == null && objValue == null) return 0;
                 if (thisValue != null && objValue == null) return 1;
                 if (thisValue == null && objValue != null) return -1;
 
-                //Type type = thisValue.getClass();
-                //Method compareToMethod = thisValue.getClass().getMethod("compareTo", new Class[] {thisValue.getClass()});
-
-                Class clazz = field.getType();
-                Class parameterTypes[] = new Class[]{field.getType()};
-                Method compareToMethod;
-                try {
-                    compareToMethod = clazz.getMethod("compareTo", field.getType());
-                    Object result = compareToMethod.invoke(thisValue, objValue);
-                    if (((Integer) result).intValue() != 0) {
-                        return ((Integer) result).intValue();
+                if (thisValue instanceof Comparable) {
+                    int result = ((Comparable) thisValue).compareTo(objValue);
+                    if (result != 0) {
+                        return result;
                     }
-                } catch (NoSuchMethodException nsme) {
-                    if (!thisValue.equals(objValue)) {
-                        if (thisValue.hashCode() > objValue.hashCode()) {
-                            return 1;
-                        } else {
-                            return -1;
-                        }
+                } else if (!thisValue.equals(objValue)) {
+                    if (thisValue.hashCode() > objValue.hashCode()) {
+                        return 1;
+                    } else {
+                        return -1;
                     }
                 }
             } catch (Exception e) {
@@ -211,17 +247,12 @@ public abstract class CommonBean<T> implements Serializable, Comparable<T>, Clon
      */
     public String toString() {
 
-        List<Field> fields = new ArrayList<Field>();
-        fields.addAll(getAnnotatedFields(this.getClass()).keyFields);
-        fields.addAll(getAnnotatedFields(this.getClass()).requiredFields);
-        fields.addAll(getAnnotatedFields(this.getClass()).infoFields);
+        StringBuilder buf = new StringBuilder();
 
-        StringBuffer buf = new StringBuffer();
-
-        for (Field field : fields) {
-            buf.append((buf.length() != 0 ? "," : "") + field.getName() + "=");
+        for (BeanProperty property : getAnnotatedFields(this.getClass()).describedProperties) {
+            buf.append(buf.length() != 0 ? "," : "").append(property.getName()).append("=");
             try {
-                Object value = PropertyUtils.getSimpleProperty(this, field.getName());
+                Object value = property.get(this);
                 if (value instanceof Date) {
                     value = new SimpleDateFormat(DEFAULT_DATE_PATTERN).format(value);
                 }
@@ -242,75 +273,43 @@ public abstract class CommonBean<T> implements Serializable, Comparable<T>, Clon
      */
     public void validate() throws IllegalArgumentException {
 
-        List<Field> fields = new ArrayList<Field>();
-        fields.addAll(getAnnotatedFields(this.getClass()).keyFields);
-        fields.addAll(getAnnotatedFields(this.getClass()).requiredFields);
-
-        for (Field field : fields) {
+        for (BeanProperty property : getAnnotatedFields(this.getClass()).validatedProperties) {
             try {
-                if (PropertyUtils.getSimpleProperty(this, field.getName()) == null) {
-                    throw new IllegalArgumentException("Required value missing: " + field.getName());
+                Object value = property.get(this);
+                if (value == null) {
+                    throw new IllegalArgumentException("Required value missing: " + property.getName());
                 }
-                Object value = PropertyUtils.getProperty(this, field.getName());
-                if (value instanceof String && (value == null || ((String) value).length() == 0)) {
-                    throw new IllegalArgumentException("Required value missing: " + field.getName());
+                if (value instanceof String && ((String) value).length() == 0) {
+                    throw new IllegalArgumentException("Required value missing: " + property.getName());
                 } else if (value instanceof List && ((List) value).size() == 0) {
-                    throw new IllegalArgumentException("Required value missing: " + field.getName());
+                    throw new IllegalArgumentException("Required value missing: " + property.getName());
                 }
             } catch (IllegalArgumentException iae) {
                 throw iae;
             } catch (Exception e) {
-                throw new RuntimeException("Error getting field '" + field.getName() + "' value", e);
+                throw new RuntimeException("Error getting field '" + property.getName() + "' value", e);
             }
         }
     }
 
     protected static Fields getAnnotatedFields(Class clazz) {
-
-        Fields annotatedFields = annotatedFieldsMap.get(clazz.getName());
-        if (annotatedFields == null) {
-            setAnnotatedFields(clazz);
-            annotatedFields = annotatedFieldsMap.get(clazz.getName());
-        }
-
-        return annotatedFields;
+        return annotatedFieldsMap.get(clazz);
     }
 
-
     protected static void setAnnotatedFields(Class clazz) {
+        annotatedFieldsMap.get(clazz);
+    }
 
-        if (annotatedFieldsMap.get(clazz.getName()) == null) {
-            Map<Integer, Field> keyMap = new TreeMap<Integer, Field>();
-            List<Field> keyFields = new ArrayList<Field>();
-            List<Field> requiredFields = new ArrayList<Field>();
-            List<Field> infoFields = new ArrayList<Field>();
-
-            for (Field field : clazz.getDeclaredFields()) {
-                Key key = field.getAnnotation(Key.class);
-                if (key != null) {
-                    keyMap.put(new Integer(key.order()), field);
-                    keyFields.add(field);
-                }
-                if (field.getAnnotation(Required.class) != null) {
-                    if (!keyFields.contains(field)) {
-                        requiredFields.add(field);
-                    }
-                }
-                if (field.getAnnotation(Info.class) != null) {
-                    if (!keyFields.contains(field) && !requiredFields.contains(field)) {
-                        infoFields.add(field);
-                    }
-                }
-            }
-
-            // Put key fields in proper order
-            keyFields = new ArrayList<Field>();
-            for (Field field : keyMap.values()) {
-                keyFields.add(field);
-            }
-            Fields annotatedFields = new Fields(keyFields, requiredFields, infoFields);
-            annotatedFieldsMap.put(clazz.getName(), annotatedFields);
+    /**
+     * Resolve the annotated fields and accessors of bean classes up front, so that the first equals, hashCode or
+     * compareTo call on them does not pay for reflection.
+     *
+     * @param classes bean classes to register
+     */
+    @SafeVarargs
+    public static void register(Class<? extends CommonBean>... classes) {
+        for (Class<? extends CommonBean> clazz : classes) {
+            setAnnotatedFields(clazz);
         }
-
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package org.lab.sms.logic;
+
+/**
+ * Rows written and throughput of one bulk load.
+ */
+public class BulkLoadResult {
+
+    private final long startNanos = System.nanoTime();
+    private long endNanos;
+    private long rows;
+    private long products;
+    private int commits;
+
+    void committed(int rows, int products) {
+        this.rows += rows;
+        this.products += products;
+        commits++;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return number of items loaded
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of products added for the items loaded
+     */
+    public long getProducts() {
+        return products;
+    }
+
+    /**
+     * @return number of transactions committed
+     */
+    public int getCommits() {
+        return commits;
+    }
+
+    /**
+     * @return time since the load started, or its total duration once it finished
+     */
+    public long getElapsedMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    public long getRowsPerSecond() {
+        return rows * 1000 / Math.max(1, getElapsedMillis());
+    }
+}
@@ -0,0 +1,99 @@
+package org.lab.sms.logic;
+
+/**
+ * Stock change file import running in the background, with its progress.
+ */
+public class ImportJob {
+
+    public enum State {QUEUED, RUNNING, SUCCEEDED, FAILED}
+
+    private final String id;
+    private final String fileName;
+    private final long totalBytes;
+    private final IngestProgress progress = new IngestProgress();
+    private volatile State state = State.QUEUED;
+    private volatile String error;
+    private volatile long finishedAt;
+
+    ImportJob(String id, String fileName, long totalBytes) {
+        this.id = id;
+        this.fileName = fileName;
+        this.totalBytes = totalBytes;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getLinesParsed() {
+        return progress.getLinesParsed();
+    }
+
+    public int getLinesApplied() {
+        return progress.getLinesApplied();
+    }
+
+    /**
+     * @return number of lines read but not committed when the job failed
+     */
+    public int getLinesFailed() {
+        return state == State.FAILED ? Math.max(0, progress.getLinesParsed() - progress.getLinesApplied()) : 0;
+    }
+
+    public long getLinesPerSecond() {
+        return progress.getLinesPerSecond();
+    }
+
+    public long getBytesRead() {
+        return progress.getBytesRead();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return estimated seconds until all bytes are read at the current rate, or null when not running
+     */
+    public Long getEtaSeconds() {
+        if (state != State.RUNNING) return null;
+        long bytesPerSecond = progress.getBytesPerSecond();
+        if (bytesPerSecond == 0) return null;
+        return Math.max(0, totalBytes - progress.getBytesRead()) / bytesPerSecond;
+    }
+
+    IngestProgress getProgress() {
+        return progress;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void running() {
+        state = State.RUNNING;
+    }
+
+    void succeeded() {
+        finishedAt = System.currentTimeMillis();
+        state = State.SUCCEEDED;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+}
@@ -0,0 +1,135 @@
+package org.lab.sms.logic;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lab.sms.StockingException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs stock change file imports in the background on a bounded pool of <code>sms.import.jobs.threads</code>
+ * threads, keeping their progress for polling. The most recent <code>sms.import.jobs.retained</code> finished jobs
+ * are kept.
+ */
+@Component
+public class ImportJobs {
+
+    private static final Log logger = LogFactory.getLog(ImportJobs.class);
+
+    @Autowired
+    StockManager stockManager;
+
+    @Value("${sms.import.jobs.threads:2}")
+    int threads;
+
+    @Value("${sms.import.jobs.queue-capacity:16}")
+    int queueCapacity;
+
+    @Value("${sms.import.jobs.retained:100}")
+    int retained;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("stock-import-"));
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue the import of a stock change file. The file is deleted once the import is done.
+     *
+     * @param file     of lines : productId,change,location
+     * @param fileName name of the file as uploaded
+     * @return the queued job
+     */
+    public ImportJob submit(Path file, String fileName) throws StockingException {
+        ImportJob job;
+        try {
+            job = new ImportJob(UUID.randomUUID().toString(), fileName, Files.size(file));
+        } catch (IOException e) {
+            delete(file);
+            throw new StockingException("Problem reading file; " + e.getMessage());
+        }
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, file));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            delete(file);
+            throw new StockingException("Too many imports queued, try again later");
+        }
+        expire();
+        return job;
+    }
+
+    /**
+     * @return the job with id <code>id</code>, or null when it is unknown or expired
+     */
+    public ImportJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    private void run(ImportJob job, Path file) {
+        job.running();
+        String error = null;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            stockManager.ingestStockLevels(inputStream, 0, job.getProgress());
+        } catch (IOException e) {
+            error = "Problem reading file; " + e.getMessage();
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        } finally {
+            delete(file);
+        }
+        if (error == null) {
+            job.succeeded();
+        } else {
+            job.failed(error);
+        }
+        logger.info("Import " + job.getId() + " of " + job.getFileName() + " " + job.getState());
+    }
+
+    private void expire() {
+        List<ImportJob> finished = jobs.values().stream()
+                .filter(job -> job.getFinishedAt() != 0)
+                .sorted(Comparator.comparingLong(ImportJob::getFinishedAt))
+                .collect(Collectors.toList());
+        for (int i = 0; i < finished.size() - retained; i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+}
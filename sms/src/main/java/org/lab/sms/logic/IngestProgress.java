@@ -0,0 +1,70 @@
+package org.lab.sms.logic;
+
+/**
+ * Progress and throughput of one stock change ingest. Lines and bytes parsed are updated by the reading thread,
+ * lines applied by the writing thread.
+ */
+public class IngestProgress {
+
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile int linesParsed;
+    private volatile int linesApplied;
+    private volatile long bytesRead;
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void parsed(int lines, long bytes) {
+        linesParsed = lines;
+        bytesRead = bytes;
+    }
+
+    void applied(int lines) {
+        linesApplied = lines;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return number of lines read, including lines skipped when resuming
+     */
+    public int getLinesParsed() {
+        return linesParsed;
+    }
+
+    /**
+     * @return number of lines committed to the database, including lines skipped when resuming
+     */
+    public int getLinesApplied() {
+        return linesApplied;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return time since the ingest started, or its total duration once it finished
+     */
+    public long getElapsedMillis() {
+        if (startNanos == 0) return 0;
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    public long getLinesPerSecond() {
+        return perSecond(linesParsed);
+    }
+
+    public long getBytesPerSecond() {
+        return perSecond(bytesRead);
+    }
+
+    private long perSecond(long count) {
+        return count * 1000 / Math.max(1, getElapsedMillis());
+    }
+}
@@ -0,0 +1,105 @@
+package org.lab.sms.logic;
+
+import org.lab.sms.StockingException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs database writes on a separate thread, one at a time and in the order they were submitted, so that reading
+ * and parsing input overlaps with writing it. At most <code>capacity</code> writes wait in the queue; a producer
+ * that is faster than the database blocks in <code>submit</code> until the writer catches up.
+ * <p/>
+ * After the first failed write, the remaining writes are discarded and the failure is thrown to the producer.
+ * A producer must end with <code>finish</code> or <code>abort</code>, or the writer thread waits forever.
+ */
+public class PipelinedWriter {
+
+    private static final Runnable END = () -> {
+    };
+
+    private final BlockingQueue<Runnable> queue;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile RuntimeException failure;
+    private volatile boolean aborted;
+
+    public PipelinedWriter(Executor executor, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Queue a write, waiting while the queue is full.
+     *
+     * @throws RuntimeException the failure of an earlier write
+     */
+    public void submit(Runnable write) {
+        checkFailure();
+        put(write);
+    }
+
+    /**
+     * Wait until all queued writes are done.
+     *
+     * @throws RuntimeException the failure of a write
+     */
+    public void finish() {
+        put(END);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StockingException("Interrupted while waiting for stock changes to be written");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Discard the queued writes and wait for the write in progress, typically in a <code>finally</code> after the
+     * producer failed. Does nothing when the writer is already done.
+     */
+    public void abort() {
+        if (done.getCount() == 0) return;
+        aborted = true;
+        queue.clear();
+        queue.offer(END);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) throw failure;
+    }
+
+    private void put(Runnable write) {
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StockingException("Interrupted while queueing stock changes");
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable write;
+            while ((write = queue.take()) != END) {
+                if (failure != null || aborted) continue;
+                try {
+                    write.run();
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new StockingException("Interrupted while writing stock changes");
+        } finally {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.lab.sms.logic;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lab.sms.StockingException;
+import org.lab.sms.dataaccess.StockRepository;
+import org.lab.sms.domain.Item;
+import org.lab.sms.domain.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Loads initial inventory, such as the stock of a new region, into the product and item tables in bulk. Rows are
+ * read while they are written, in chunks of <code>sms.bulk-load.commit-interval</code> rows that are each committed
+ * in their own transaction. Products that do not exist yet are added from the product names of the rows.
+ * <p/>
+ * The items loaded must not exist yet; use <code>StockManager.setStockLevels</code> to change existing stock levels.
+ */
+@Component
+public class StockBulkLoader {
+
+    private static final Log logger = LogFactory.getLog(StockBulkLoader.class);
+
+    @Autowired
+    StockRepository stockRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Value("${sms.bulk-load.commit-interval:50000}")
+    int commitInterval;
+
+    /**
+     * Load stock levels, committing every <code>sms.bulk-load.commit-interval</code> rows.
+     */
+    public BulkLoadResult load(List<Stock> stocks) throws StockingException {
+        return load(stocks.iterator(), commitInterval);
+    }
+
+    /**
+     * Load stock levels from CSV lines : productId,productName,locationCode,quantity. The product name may be empty
+     * for existing products and may contain commas. Empty lines and a header line starting with productId are
+     * skipped.
+     *
+     * @param inputStream    CSV lines, UTF-8 encoded
+     * @param commitInterval rows per transaction
+     */
+    public BulkLoadResult load(InputStream inputStream, int commitInterval) throws StockingException, IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 65536);
+        try {
+            return load(new CsvRows(reader), commitInterval);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Load stock levels.
+     *
+     * @param stocks         stock levels, with product names for new products
+     * @param commitInterval rows per transaction
+     * @throws StockingException when a row is invalid or cannot be written; the rows of earlier transactions stay
+     *                           committed
+     */
+    public BulkLoadResult load(Iterator<Stock> stocks, int commitInterval) throws StockingException {
+        if (commitInterval < 1) {
+            throw new StockingException("Commit interval [" + commitInterval + "] is invalid");
+        }
+        BulkLoadResult result = new BulkLoadResult();
+        Set<String> knownProducts = new HashSet<>();
+        List<Stock> chunk = new ArrayList<>(Math.min(commitInterval, 65536));
+        while (stocks.hasNext()) {
+            chunk.add(stocks.next());
+            if (chunk.size() == commitInterval) {
+                write(chunk, knownProducts, result);
+                chunk.clear();
+            }
+        }
+        write(chunk, knownProducts, result);
+        result.finish();
+        logger.info("Bulk loaded " + result.getRows() + " items and " + result.getProducts() + " products in "
+                + result.getElapsedMillis() + " ms, " + result.getRowsPerSecond() + " rows/s");
+        return result;
+    }
+
+    /**
+     * Write one chunk of rows in its own transaction, adding the products it refers to that do not exist yet.
+     *
+     * @param knownProducts ids of the products known to exist, extended with the products added
+     */
+    private void write(List<Stock> chunk, Set<String> knownProducts, BulkLoadResult result) {
+        if (chunk.isEmpty()) return;
+        Set<String> unknown = new HashSet<>();
+        for (Stock stock : chunk) {
+            if (!knownProducts.contains(stock.getProductId())) unknown.add(stock.getProductId());
+        }
+        for (Product product : stockRepository.findProducts(unknown)) {
+            unknown.remove(product.getId());
+            knownProducts.add(product.getId());
+        }
+
+        Map<String, Product> newProducts = new LinkedHashMap<>();
+        List<Item> items = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Stock stock = chunk.get(i);
+            if (unknown.contains(stock.getProductId()) && !newProducts.containsKey(stock.getProductId())) {
+                if (stock.getProductName() == null || stock.getProductName().isEmpty()) {
+                    throw new StockingException(committed("[Row#" + (result.getRows() + i + 1) + "] ProductID ["
+                            + stock.getProductId() + "] is missing product name value", result));
+                }
+                newProducts.put(stock.getProductId(), new Product(stock.getProductId(), stock.getProductName()));
+            }
+            items.add(new Item(stock.getProductId(), stock.getLocationCode(), stock.getQuantity()));
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                stockRepository.insertProducts(new ArrayList<>(newProducts.values()));
+                stockRepository.insertItems(items);
+                return null;
+            });
+        } catch (DataAccessException e) {
+            throw new StockingException(committed("[Row#" + (result.getRows() + 1) + "-" + (result.getRows() + items.size())
+                    + "] " + e.getMostSpecificCause().getMessage(), result));
+        }
+        knownProducts.addAll(newProducts.keySet());
+        result.committed(items.size(), newProducts.size());
+    }
+
+    private static String committed(String message, BulkLoadResult result) {
+        return result.getRows() == 0 ? message : message + "; rows up to " + result.getRows() + " are committed";
+    }
+
+    /**
+     * Stock levels read from CSV lines, one line ahead of the caller.
+     */
+    private static class CsvRows implements Iterator<Stock> {
+        private final BufferedReader reader;
+        private int lineNumber;
+        private Stock next;
+
+        CsvRows(BufferedReader reader) {
+            this.reader = reader;
+            advance();
+            if (next == null && lineNumber == 1) advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Stock next() {
+            if (next == null) throw new NoSuchElementException();
+            Stock stock = next;
+            advance();
+            return stock;
+        }
+
+        /**
+         * Read the next non-empty line. The header line, which can only be the first line, leaves
+         * <code>next</code> null.
+         */
+        private void advance() {
+            next = null;
+            String line;
+            try {
+                do {
+                    line = reader.readLine();
+                    if (line == null) return;
+                    lineNumber++;
+                } while (line.trim().isEmpty());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (lineNumber == 1 && line.regionMatches(true, 0, "productId", 0, 9)) return;
+
+            int first = line.indexOf(',');
+            int last = line.lastIndexOf(',');
+            int location = first < 0 || last <= first ? -1 : line.lastIndexOf(',', last - 1);
+            if (location <= first) {
+                throw new StockingException("[Line#" + lineNumber + "] line formatting is invalid [" + line + "]");
+            }
+            String quantity = line.substring(last + 1).trim();
+            try {
+                String productName = line.substring(first + 1, location).trim();
+                next = new Stock(line.substring(0, first).trim(), productName.isEmpty() ? null : productName,
+                        line.substring(location + 1, last).trim(), Integer.parseInt(quantity));
+            } catch (NumberFormatException e) {
+                throw new StockingException("[Line#" + lineNumber + "] quantity [" + quantity + "] is invalid [" + line + "]");
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.lab.sms.logic;
+
+/**
+ * Callback receiving the stock changes read by <code>StockChangeParser</code>.
+ */
+@FunctionalInterface
+public interface StockChangeHandler {
+
+    /**
+     * @param record the change read from the current line; the record is reused for the next line, so it must not
+     *               be kept after this call returns
+     */
+    void onChange(StockChangeRecord record);
+}
@@ -0,0 +1,251 @@
+package org.lab.sms.logic;
+
+import org.lab.sms.StockingException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads stock change lines : productId,change,location straight from a byte buffer. Commas are located by scanning
+ * the bytes, the change is parsed without creating a string and product ids and location codes are interned, so
+ * that reading a line creates no garbage once its product and location have been seen.
+ * <p/>
+ * One optional whitespace character is allowed on each side of a comma. Empty lines are skipped and not counted.
+ * A parser keeps state between lines and must only be used by one thread.
+ */
+public class StockChangeParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private final SymbolTable symbols = new SymbolTable();
+    private final StockChangeRecord record = new StockChangeRecord();
+
+    private int skipLines;
+    private int lineCount;
+    private long bytesRead;
+
+    /**
+     * Skip the first lines read instead of handing them out. Skipped lines are counted, but not validated.
+     *
+     * @param lines number of non-empty lines to skip
+     */
+    public void skipLines(int lines) {
+        this.skipLines = lines;
+    }
+
+    /**
+     * @return number of non-empty lines read so far, including skipped lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Read all lines of <code>inputStream</code>, handing out each change to <code>handler</code>.
+     *
+     * @param inputStream of lines : productId,change,location
+     * @param handler     receives each change
+     * @return number of non-empty lines read so far, including skipped lines
+     * @throws StockingException when a line is invalid; the message starts with [Line#N]
+     */
+    public int parse(InputStream inputStream, StockChangeHandler handler) throws IOException {
+        return parse(inputStream::read, handler);
+    }
+
+    /**
+     * Read all lines from the position to the limit of <code>byteBuffer</code>, handing out each change to
+     * <code>handler</code>. The bytes are copied to the parse buffer in blocks, so a memory mapped file can be read
+     * without loading it on the heap.
+     *
+     * @param byteBuffer of lines : productId,change,location
+     * @param handler    receives each change
+     * @return number of non-empty lines read so far, including skipped lines
+     * @throws StockingException when a line is invalid; the message starts with [Line#N]
+     */
+    public int parse(ByteBuffer byteBuffer, StockChangeHandler handler) {
+        try {
+            return parse((bytes, offset, length) -> {
+                if (!byteBuffer.hasRemaining()) return -1;
+                int read = Math.min(length, byteBuffer.remaining());
+                byteBuffer.get(bytes, offset, read);
+                return read;
+            }, handler);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int parse(Source source, StockChangeHandler handler) throws IOException {
+        int limit = 0;
+        int start = 0;
+        int pos = 0;
+        while (true) {
+            if (pos == limit) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit -= start;
+                    pos -= start;
+                    start = 0;
+                }
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = source.read(buffer, limit, buffer.length - limit);
+                if (read < 0) break;
+                bytesRead += read;
+                limit += read;
+                continue;
+            }
+            byte b = buffer[pos];
+            if (b == '\n' || b == '\r') {
+                line(start, pos, handler);
+                start = pos + 1;
+            }
+            pos++;
+        }
+        line(start, limit, handler);
+        return lineCount;
+    }
+
+    private void line(int start, int end, StockChangeHandler handler) {
+        if (start == end) return;
+        lineCount++;
+        if (lineCount <= skipLines) return;
+
+        record.lineNumber = lineCount;
+        record.buffer = buffer;
+        record.lineStart = start;
+        record.lineEnd = end;
+
+        int comma1 = -1;
+        int comma2 = -1;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != ',') continue;
+            if (comma1 < 0) {
+                comma1 = i;
+            } else if (comma2 < 0) {
+                comma2 = i;
+            } else {
+                throw invalidFormat();
+            }
+        }
+        if (comma2 < 0) throw invalidFormat();
+
+        int productEnd = comma1 > start && isWhitespace(buffer[comma1 - 1]) ? comma1 - 1 : comma1;
+        int quantityStart = comma1 + 1 < comma2 && isWhitespace(buffer[comma1 + 1]) ? comma1 + 2 : comma1 + 1;
+        int quantityEnd = comma2 > quantityStart && isWhitespace(buffer[comma2 - 1]) ? comma2 - 1 : comma2;
+        int locationStart = comma2 + 1 < end && isWhitespace(buffer[comma2 + 1]) ? comma2 + 2 : comma2 + 1;
+        if (productEnd == start || locationStart == end) throw invalidFormat();
+
+        record.quantity = parseQuantity(quantityStart, quantityEnd);
+        record.productId = symbols.get(buffer, start, productEnd - start);
+        record.locationCode = symbols.get(buffer, locationStart, end - locationStart);
+        handler.onChange(record);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    private int parseQuantity(int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (buffer[pos] == '-' || buffer[pos] == '+')) {
+            negative = buffer[pos] == '-';
+            pos++;
+        }
+        if (pos == end) throw invalidQuantity(start, end);
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = buffer[pos] - '0';
+            if (digit < 0 || digit > 9) throw invalidQuantity(start, end);
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) throw invalidQuantity(start, end);
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw invalidQuantity(start, end);
+        return (int) value;
+    }
+
+    private StockingException invalidFormat() {
+        return new StockingException("[Line#" + record.lineNumber + "] line formatting is invalid [" + record.getLine() + "]");
+    }
+
+    private StockingException invalidQuantity(int start, int end) {
+        String quantity = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        return new StockingException("[Line#" + record.lineNumber + "] quantity [" + quantity + "] is invalid [" + record.getLine() + "]");
+    }
+
+    @FunctionalInterface
+    private interface Source {
+        int read(byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Interns byte sequences as strings, finding known sequences without creating a string.
+     */
+    private static class SymbolTable {
+        private byte[][] keys = new byte[256][];
+        private String[] values = new String[256];
+        private int[] hashes = new int[256];
+        private int size;
+
+        String get(byte[] bytes, int offset, int length) {
+            int hash = 1;
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (hashes[slot] == hash && matches(keys[slot], bytes, offset, length)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            String value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+            keys[slot] = Arrays.copyOfRange(bytes, offset, offset + length);
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++size * 2 > keys.length) grow();
+            return value;
+        }
+
+        private static boolean matches(byte[] key, byte[] bytes, int offset, int length) {
+            if (key.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bytes[offset + i]) return false;
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            hashes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
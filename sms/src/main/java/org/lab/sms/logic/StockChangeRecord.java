@@ -0,0 +1,45 @@
+package org.lab.sms.logic;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One stock change line : productId,change,location. A single record is reused by <code>StockChangeParser</code>
+ * for every line it reads.
+ */
+public final class StockChangeRecord {
+
+    int lineNumber;
+    String productId;
+    String locationCode;
+    int quantity;
+
+    byte[] buffer;
+    int lineStart;
+    int lineEnd;
+
+    StockChangeRecord() {
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public String getLocationCode() {
+        return locationCode;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return text of the current line, decoded on each call
+     */
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+}
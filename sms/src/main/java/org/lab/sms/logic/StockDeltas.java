@@ -0,0 +1,186 @@
+package org.lab.sms.logic;
+
+import org.lab.sms.StockingException;
+import org.lab.sms.domain.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folds stock quantity changes into one net change per product and location, so that a key that is changed many
+ * times is written only once. Net changes are kept in primitive int arrays indexed through an open addressing
+ * table, and product ids and location codes are interned so repeated keys share the same strings.
+ * <p/>
+ * The line number of the first change for each key is kept to report errors against the original input.
+ */
+public class StockDeltas {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, String> symbols = new HashMap<>();
+
+    private String[] productIds = new String[INITIAL_CAPACITY];
+    private String[] locationCodes = new String[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private int[] firstLines = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // slot -> index + 1 into the arrays above, 0 marks an empty slot
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Add a quantity change to the net change of its product and location.
+     *
+     * @param productId    product id
+     * @param locationCode location code
+     * @param quantity     quantity change
+     * @param line         line number of the change
+     * @throws StockingException when the net change no longer fits an int
+     */
+    public void add(String productId, String locationCode, int quantity, int line) {
+        int mask = table.length - 1;
+        int slot = hash(productId, locationCode) & mask;
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (productIds[index].equals(productId) && locationCodes[index].equals(locationCode)) {
+                try {
+                    quantities[index] = Math.addExact(quantities[index], quantity);
+                } catch (ArithmeticException e) {
+                    throw new StockingException("[Line#" + line + "] net quantity change of [" + productId + ","
+                            + locationCode + "] is out of range");
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == productIds.length) {
+            grow();
+            add(productId, locationCode, quantity, line);
+            return;
+        }
+        productIds[size] = intern(productId);
+        locationCodes[size] = intern(locationCode);
+        quantities[size] = quantity;
+        firstLines[size] = line;
+        table[slot] = ++size;
+    }
+
+    /**
+     * Add all net changes of <code>other</code> to this one.
+     *
+     * @param other      net changes to add
+     * @param lineOffset number added to the line numbers of <code>other</code>
+     */
+    public void addAll(StockDeltas other, int lineOffset) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.productIds[i], other.locationCodes[i], other.quantities[i], other.firstLines[i] + lineOffset);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getProductId(int index) {
+        return productIds[index];
+    }
+
+    public String getLocationCode(int index) {
+        return locationCodes[index];
+    }
+
+    public int getQuantity(int index) {
+        return quantities[index];
+    }
+
+    public int getFirstLine(int index) {
+        return firstLines[index];
+    }
+
+    /**
+     * @return one item per product and location holding its net quantity change, in order of first appearance or in
+     * key order after <code>sort</code>
+     */
+    public List<Item> toItems() {
+        List<Item> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new Item(productIds[i], locationCodes[i], quantities[i]));
+        }
+        return items;
+    }
+
+    /**
+     * Order the net changes by product id and then location code, so that writers holding locks or touching rows in
+     * that order cannot deadlock each other.
+     */
+    public void sort() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            int result = productIds[a].compareTo(productIds[b]);
+            return result != 0 ? result : locationCodes[a].compareTo(locationCodes[b]);
+        });
+        String[] sortedProductIds = new String[productIds.length];
+        String[] sortedLocationCodes = new String[locationCodes.length];
+        int[] sortedQuantities = new int[quantities.length];
+        int[] sortedFirstLines = new int[firstLines.length];
+        for (int i = 0; i < size; i++) {
+            sortedProductIds[i] = productIds[order[i]];
+            sortedLocationCodes[i] = locationCodes[order[i]];
+            sortedQuantities[i] = quantities[order[i]];
+            sortedFirstLines[i] = firstLines[order[i]];
+        }
+        productIds = sortedProductIds;
+        locationCodes = sortedLocationCodes;
+        quantities = sortedQuantities;
+        firstLines = sortedFirstLines;
+        rehash();
+    }
+
+    /**
+     * Remove all net changes. Interned product ids and location codes are kept for reuse.
+     */
+    public void clear() {
+        Arrays.fill(productIds, 0, size, null);
+        Arrays.fill(locationCodes, 0, size, null);
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private String intern(String value) {
+        String symbol = symbols.putIfAbsent(value, value);
+        return symbol == null ? value : symbol;
+    }
+
+    private void grow() {
+        int capacity = productIds.length * 2;
+        productIds = Arrays.copyOf(productIds, capacity);
+        locationCodes = Arrays.copyOf(locationCodes, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        firstLines = Arrays.copyOf(firstLines, capacity);
+        table = new int[capacity * 2];
+        rehash();
+    }
+
+    private void rehash() {
+        Arrays.fill(table, 0);
+        int mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(productIds[i], locationCodes[i]) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+    }
+
+    private static int hash(String productId, String locationCode) {
+        int h = productId.hashCode() * 31 + locationCode.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,172 @@
+package org.lab.sms.logic;
+
+import org.lab.sms.StockingException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads a local stock change file in parallel. The file is split at line boundaries into segments, each segment is
+ * memory mapped and parsed into net changes on a fork-join pool, and the net changes of all segments are merged in
+ * file order.
+ */
+@Component
+public class StockFileImporter {
+
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final long MAX_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    @Value("${sms.import.parallelism:0}")
+    int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    void start() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    void stop() {
+        pool.shutdown();
+    }
+
+    /**
+     * Read all lines of <code>file</code> into net changes per product and location.
+     *
+     * @param file     of lines : productId,change,location
+     * @param deltas   receives the net changes, with line numbers counted from the start of the file
+     * @return number of non-empty lines read
+     * @throws StockingException when a line is invalid; the message starts with [Line#N]
+     */
+    public int read(Path file, StockDeltas deltas) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> segments = split(channel);
+            if (segments.isEmpty()) return 0;
+            Segment result = pool.invoke(new SegmentTask(channel, segments, 0, segments.size()));
+            if (result.error != null) {
+                String message = result.error.getMessage();
+                throw new StockingException("[Line#" + result.errorLine + "]" + message.substring(message.indexOf(']') + 1));
+            }
+            deltas.addAll(result.deltas, 0);
+            return result.lineCount;
+        }
+    }
+
+    /**
+     * Split the file into segments of about equal size that end right after a newline.
+     *
+     * @return start and end offset of each segment
+     */
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long segmentSize = Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, size / (pool.getParallelism() * 4L)));
+        List<long[]> segments = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + segmentSize);
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for (int i = 0; i < read && newline < 0; i++) {
+                    if (probe.get(i) == '\n') newline = i;
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+            segments.add(new long[]{start, Math.min(end, size)});
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Net changes, line count and first error of a range of consecutive segments.
+     */
+    private static class Segment {
+        StockDeltas deltas = new StockDeltas();
+        int lineCount;
+        StockingException error;
+        int errorLine;
+
+        /**
+         * Append the segment following this one.
+         */
+        Segment merge(Segment next) {
+            if (error == null) {
+                if (next.error != null) {
+                    error = next.error;
+                    errorLine = lineCount + next.errorLine;
+                } else {
+                    try {
+                        deltas.addAll(next.deltas, lineCount);
+                    } catch (StockingException e) {
+                        // a net change out of range, reported at a line relative to this segment
+                        String message = e.getMessage();
+                        error = e;
+                        errorLine = Integer.parseInt(message.substring("[Line#".length(), message.indexOf(']')));
+                    }
+                }
+                lineCount += next.lineCount;
+            }
+            return this;
+        }
+    }
+
+    private static class SegmentTask extends RecursiveTask<Segment> {
+        private final FileChannel channel;
+        private final List<long[]> segments;
+        private final int from;
+        private final int to;
+
+        SegmentTask(FileChannel channel, List<long[]> segments, int from, int to) {
+            this.channel = channel;
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Segment compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                SegmentTask right = new SegmentTask(channel, segments, middle, to);
+                right.fork();
+                Segment left = new SegmentTask(channel, segments, from, middle).compute();
+                return left.merge(right.join());
+            }
+
+            Segment segment = new Segment();
+            StockChangeParser parser = new StockChangeParser();
+            long[] range = segments.get(from);
+            try {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+                parser.parse(buffer, record -> segment.deltas.add(record.getProductId(), record.getLocationCode(),
+                        record.getQuantity(), record.getLineNumber()));
+            } catch (StockingException e) {
+                segment.error = e;
+                segment.errorLine = parser.getLineCount();
+            } catch (IOException e) {
+                throw new StockingException("Problem reading file; " + e.getMessage());
+            }
+            segment.lineCount = parser.getLineCount();
+            return segment;
+        }
+    }
+}
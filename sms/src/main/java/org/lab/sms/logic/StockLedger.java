@@ -0,0 +1,430 @@
+package org.lab.sms.logic;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lab.sms.StockBusyException;
+import org.lab.sms.StockingException;
+import org.lab.sms.dataaccess.StockRepository;
+import org.lab.sms.domain.Item;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind ledger of stock quantity changes, enabled with <code>sms.ledger.enabled</code>. Changes are appended
+ * to a journal and added to a pending net change per product and location, and are written to the database in one
+ * batch every <code>sms.ledger.flush-interval</code> milliseconds, or as soon as <code>sms.ledger.flush-size</code>
+ * products and locations have pending changes.
+ * <p/>
+ * The journal holds the lines : productId,change,location of all changes not yet written. At each flush it is
+ * rotated to a numbered file. The number of the last rotated journal is committed to the stock_ledger table in the
+ * same transaction as its changes, after which the rotated journals are deleted. Journals left behind by a crash are
+ * written to the database at startup, skipping those at or below the committed number, so that no change is applied
+ * twice.
+ * <p/>
+ * Stock levels read from the database lag behind the ledger by at most one flush.
+ */
+@Component
+public class StockLedger {
+
+    private static final Log logger = LogFactory.getLog(StockLedger.class);
+
+    private static final String JOURNAL = "ledger.journal";
+    private static final String FLUSHING = ".flushing";
+
+    @Autowired
+    StockRepository stockRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    StockLocks stockLocks;
+
+    @Autowired
+    StockRetry stockRetry;
+
+    @Value("${sms.ledger.enabled:false}")
+    boolean enabled;
+
+    @Value("${sms.ledger.directory:ledger}")
+    String directory;
+
+    @Value("${sms.ledger.name:ledger}")
+    String name;
+
+    @Value("${sms.ledger.flush-size:10000}")
+    int flushSize;
+
+    @Value("${sms.ledger.sync:true}")
+    boolean sync;
+
+    // pending net change per product and location; changes to one key are serialized by the map. Kept as a long so
+    // that re-adding the changes of a failed flush cannot overflow; add keeps each net change within the int range
+    private final Map<Key, Long> pending = new ConcurrentHashMap<>();
+    // locations known to exist, so that changes are only validated against the database once per location
+    private final Map<String, Boolean> knownLocations = new ConcurrentHashMap<>();
+    // appends hold the read lock, so a rotation never separates a journal line from its pending change
+    private final ReadWriteLock rotation = new ReentrantReadWriteLock();
+    private final Object journalLock = new Object();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // rotated journals whose changes are pending or being written
+    private final List<Path> rotated = new ArrayList<>();
+
+    private Path journalFile;
+    private FileChannel journal;
+    // number of the last rotated journal
+    private long rotations;
+    private ExecutorService flusher;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) return;
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        journalFile = dir.resolve(JOURNAL);
+        recover(dir);
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        flusher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("stock-ledger-"));
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (!enabled) return;
+        flusher.shutdown();
+        flush();
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of products and locations with changes not yet written
+     */
+    public int getPendingSize() {
+        return pending.size();
+    }
+
+    /**
+     * Validate, journal and add quantity changes. The changes are durable when this returns, and written to the
+     * database by a later flush.
+     *
+     * @param changes quantity changes of products that exist
+     * @throws StockingException when a location does not exist, a net change gets out of the int range or a change
+     *                           cannot be journaled
+     */
+    public void add(List<Stock> changes) throws StockingException {
+        StringBuilder lines = new StringBuilder();
+        for (Stock change : changes) {
+            validate(change);
+            lines.append(change.getProductId()).append(',').append(change.getQuantity()).append(',')
+                    .append(change.getLocationCode()).append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        rotation.readLock().lock();
+        int added = 0;
+        try {
+            // added to the pending changes first, so that an out of range change is rejected before it is journaled
+            for (Stock change : changes) {
+                long quantity = pending.merge(key(change), (long) change.getQuantity(), Long::sum);
+                added++;
+                if (quantity < Integer.MIN_VALUE || quantity > Integer.MAX_VALUE) {
+                    throw new StockingException("Net quantity change of [" + change.getProductId() + ","
+                            + change.getLocationCode() + "] is out of range");
+                }
+            }
+            synchronized (journalLock) {
+                while (bytes.hasRemaining()) journal.write(bytes);
+                if (sync) journal.force(false);
+            }
+        } catch (StockingException e) {
+            undo(changes, added);
+            throw e;
+        } catch (IOException e) {
+            undo(changes, added);
+            throw new StockingException("Problem writing stock ledger journal; " + e.getMessage());
+        } finally {
+            rotation.readLock().unlock();
+        }
+
+        if (pending.size() >= flushSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    private void undo(List<Stock> changes, int added) {
+        for (int i = 0; i < added; i++) {
+            Stock change = changes.get(i);
+            pending.merge(key(change), -(long) change.getQuantity(), (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    private static Key key(Stock change) {
+        return new Key(change.getProductId(), change.getLocationCode());
+    }
+
+    @Scheduled(fixedDelayString = "${sms.ledger.flush-interval:1000}")
+    public void scheduledFlush() {
+        if (enabled) flush();
+    }
+
+    /**
+     * Write all pending changes to the database in one transaction. Changes that cannot be written, for instance
+     * because the database is unavailable, stay pending and journaled.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            List<Item> items = new ArrayList<>();
+            long flushed;
+            rotation.writeLock().lock();
+            try {
+                if (pending.isEmpty()) return;
+                rotate();
+                flushed = rotations;
+                for (Key key : pending.keySet()) {
+                    Long quantity = pending.remove(key);
+                    // only changes re-added after a failed flush can exceed the int range of one item
+                    while (quantity != null && quantity != 0) {
+                        int part = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, quantity));
+                        items.add(new Item(key.productId, key.locationCode, part));
+                        quantity -= part;
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Problem rotating stock ledger journal; " + e.getMessage());
+                return;
+            } finally {
+                rotation.writeLock().unlock();
+            }
+
+            settle(items, write(items, flushed));
+            logger.debug("Stock ledger flushed " + items.size() + " items");
+        }
+    }
+
+    /**
+     * Write changes in key order in one transaction, holding the stock locks of their keys, and commit
+     * <code>flushed</code> as the number of the last journal written. When a change violates a constraint, the
+     * changes are written one at a time within the transaction and the violating changes are logged and dropped, so
+     * that they cannot block the ledger.
+     *
+     * @return false when the changes could not be written for another reason, such as the database being unavailable
+     */
+    private boolean write(List<Item> items, long flushed) {
+        items.sort(Comparator.comparing(Item::getProductId).thenComparing(Item::getLocationCode));
+        try {
+            stockRetry.execute("Stock ledger flush", () ->
+                    stockLocks.withLocks(items, () -> transactionTemplate.execute(status -> {
+                        stockRepository.addQuantities(items);
+                        stockRepository.saveLedgerWatermark(name, flushed);
+                        return null;
+                    })));
+            return true;
+        } catch (StockBusyException e) {
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Stock ledger write of " + items.size() + " items failed, writing them one at a time; "
+                    + e.getMostSpecificCause().getMessage());
+        } catch (DataAccessException e) {
+            logger.error("Stock ledger write of " + items.size() + " items failed, retrying at the next flush; "
+                    + e.getMostSpecificCause().getMessage());
+            return false;
+        }
+        try {
+            stockRetry.execute("Stock ledger flush", () ->
+                    stockLocks.withLocks(items, () -> transactionTemplate.execute(status -> {
+                        for (Item item : items) {
+                            Object savepoint = status.createSavepoint();
+                            try {
+                                stockRepository.addQuantities(Collections.singletonList(item));
+                                status.releaseSavepoint(savepoint);
+                            } catch (DataIntegrityViolationException e) {
+                                status.rollbackToSavepoint(savepoint);
+                                logger.error("Dropped stock ledger change " + item.getProductId() + ","
+                                        + item.getQuantity() + "," + item.getLocationCode() + "; "
+                                        + e.getMostSpecificCause().getMessage());
+                            }
+                        }
+                        stockRepository.saveLedgerWatermark(name, flushed);
+                        return null;
+                    })));
+            return true;
+        } catch (StockBusyException e) {
+            return false;
+        } catch (DataAccessException e) {
+            logger.error("Stock ledger write of " + items.size() + " items failed, retrying at the next flush; "
+                    + e.getMostSpecificCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Delete the rotated journals once their changes are committed, or add the changes to the pending changes again
+     * and keep the journals when they are not.
+     */
+    private void settle(List<Item> items, boolean written) {
+        if (written) {
+            try {
+                for (Path file : rotated) Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // journals left behind are at or below the committed number and are skipped at the next startup
+                logger.error("Problem deleting stock ledger journals; " + e.getMessage());
+            }
+            rotated.clear();
+            return;
+        }
+        for (Item item : items) {
+            pending.merge(new Key(item.getProductId(), item.getLocationCode()), (long) item.getQuantity(), Long::sum);
+        }
+    }
+
+    private void validate(Stock change) {
+        String productId = change.getProductId();
+        String locationCode = change.getLocationCode();
+        if (!journalable(productId) || !journalable(locationCode)) {
+            throw new StockingException("Stock change [" + productId + "," + locationCode + "] cannot be journaled");
+        }
+        if (!knownLocations.containsKey(locationCode)) {
+            if (stockRepository.findLocation(locationCode) == null) {
+                throw new StockingException("Location [" + locationCode + "] is invalid");
+            }
+            knownLocations.put(locationCode, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Whether a value is read back unchanged from a journal line: no separators, and no leading or trailing
+     * whitespace, which the parser drops next to separators.
+     */
+    private static boolean journalable(String value) {
+        if (value == null || value.isEmpty()) return false;
+        if (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1))) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '\n' || c == '\r') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Move the journal aside and start a new one. Must hold the rotation write lock. When the journal cannot be
+     * moved it is reopened, so that changes can still be added to it.
+     */
+    private void rotate() throws IOException {
+        Path target = journalFile.resolveSibling(JOURNAL + "." + (++rotations) + FLUSHING);
+        journal.close();
+        try {
+            Files.move(journalFile, target);
+        } finally {
+            journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        rotated.add(target);
+    }
+
+    /**
+     * Write the changes of journals left behind by a previous run, in the order they were journaled. Journals at or
+     * below the number committed by the previous run are already written and are deleted. Journal numbers continue
+     * after the highest number found on disk or committed.
+     */
+    private void recover(Path dir) throws IOException {
+        stockRepository.createLedgerTable();
+        long flushed = stockRepository.findLedgerWatermark(name);
+        rotations = flushed;
+        List<Path> journals = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, JOURNAL + ".*" + FLUSHING)) {
+            for (Path file : files) {
+                long number = rotation(file);
+                rotations = Math.max(rotations, number);
+                if (number <= flushed) {
+                    Files.delete(file);
+                } else {
+                    journals.add(file);
+                }
+            }
+        }
+        journals.sort(Comparator.comparingLong(StockLedger::rotation));
+        if (Files.exists(journalFile) && Files.size(journalFile) > 0) {
+            Path target = journalFile.resolveSibling(JOURNAL + "." + (++rotations) + FLUSHING);
+            Files.move(journalFile, target);
+            journals.add(target);
+        }
+        if (journals.isEmpty()) return;
+
+        StockDeltas deltas = new StockDeltas();
+        int lines = 0;
+        for (Path file : journals) {
+            try (InputStream in = Files.newInputStream(file)) {
+                lines += new StockChangeParser().parse(in, record -> deltas.add(record.getProductId(),
+                        record.getLocationCode(), record.getQuantity(), record.getLineNumber()));
+            }
+        }
+        List<Item> items = deltas.toItems();
+        rotated.addAll(journals);
+        settle(items, write(items, rotations));
+        logger.info("Stock ledger recovered " + lines + " journaled changes of " + items.size() + " items");
+    }
+
+    private static long rotation(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(JOURNAL.length() + 1, name.length() - FLUSHING.length()));
+    }
+
+    private static final class Key {
+        final String productId;
+        final String locationCode;
+
+        Key(String productId, String locationCode) {
+            this.productId = productId;
+            this.locationCode = locationCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return productId.equals(other.productId) && locationCode.equals(other.locationCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(productId, locationCode);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.lab.sms.logic;
+
+import org.lab.sms.domain.Item;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped locks over product and location keys, serializing writers that change the same stock levels while
+ * writers of other stock levels run in parallel. A writer takes all stripes of its keys in stripe order, so writers
+ * never wait for each other in a cycle.
+ * <p/>
+ * Only writes of at most <code>sms.locks.max-keys</code> keys are locked, as a large write would take nearly every
+ * stripe and serialize all writers. Large writes rely on writing in key order, which keeps database row locks from
+ * deadlocking, and on retries for the remaining conflicts, including two writers inserting the same new item. The locks are local to this JVM; writers in other
+ * instances are only ordered by the database.
+ */
+@Component
+public class StockLocks {
+
+    @Value("${sms.locks.stripes:4096}")
+    int stripes;
+
+    @Value("${sms.locks.max-keys:32}")
+    int maxKeys;
+
+    private ReentrantLock[] locks;
+
+    @PostConstruct
+    void start() {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Run <code>action</code> holding the stripes of all keys of <code>items</code>, or without locks when there
+     * are more than <code>sms.locks.max-keys</code> items.
+     *
+     * @param items  stock levels that <code>action</code> changes, in key order
+     * @param action typically a transaction, so the stripes are held until it commits
+     */
+    public <T> T withLocks(List<Item> items, Supplier<T> action) {
+        if (items.size() > maxKeys) return action.get();
+        BitSet held = new BitSet(locks.length);
+        for (Item item : items) {
+            held.set(stripe(item.getProductId(), item.getLocationCode()));
+        }
+        int locked = -1;
+        try {
+            for (int i = held.nextSetBit(0); i >= 0; i = held.nextSetBit(i + 1)) {
+                locks[i].lock();
+                locked = i;
+            }
+            return action.get();
+        } finally {
+            for (int i = held.nextSetBit(0); i >= 0 && i <= locked; i = held.nextSetBit(i + 1)) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    private int stripe(String productId, String locationCode) {
+        int h = productId.hashCode() * 31 + locationCode.hashCode();
+        return (h ^ (h >>> 16)) & (locks.length - 1);
+    }
+}
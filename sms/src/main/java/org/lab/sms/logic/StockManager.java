@@ -1,135 +1,583 @@
 package org.lab.sms.logic;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lab.sms.StockBusyException;
 import org.lab.sms.StockingException;
+import org.lab.sms.dataaccess.CacheStats;
+import org.lab.sms.dataaccess.ItemCache;
+import org.lab.sms.dataaccess.ProductCatalog;
 import org.lab.sms.dataaccess.StockRepository;
 import org.lab.sms.domain.Item;
 import org.lab.sms.domain.Product;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.BufferedReader;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 @Component
 public class StockManager {
 
+    private static final Log logger = LogFactory.getLog(StockManager.class);
+
     @Autowired
     StockRepository stockRepository;
 
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    StockFileImporter stockFileImporter;
+
+    @Autowired
+    StockLedger stockLedger;
+
+    @Autowired
+    StockLocks stockLocks;
+
+    @Autowired
+    StockRetry stockRetry;
+
+    @Autowired
+    ProductCatalog productCatalog;
+
+    @Autowired
+    ItemCache itemCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${sms.ingest.chunk-size:5000}")
+    int chunkSize;
+
+    @Value("${sms.ingest.queue-capacity:4}")
+    int queueCapacity;
+
+    @Value("${sms.catalog.warm:true}")
+    boolean warmCatalog;
+
+    @Value("${sms.page.max-size:1000}")
+    int maxPageSize;
+
+    private ExecutorService ingestWriters;
+
+    // stock lines applied, by the way they were sent
+    private Counter levelsSet;
+    private Counter changesApplied;
+    private Counter linesUploaded;
+    private Counter linesImported;
+
     public StockManager() {
     }
 
-    @Transactional
+    @PostConstruct
+    void start() {
+        ingestWriters = Executors.newCachedThreadPool(new CustomizableThreadFactory("stock-ingest-"));
+        levelsSet = linesIngested("set");
+        changesApplied = linesIngested("change");
+        linesUploaded = linesIngested("upload");
+        linesImported = linesIngested("import");
+    }
+
+    private Counter linesIngested(String source) {
+        return Counter.builder("sms.lines.ingested")
+                .description("Stock levels and stock changes applied")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        ingestWriters.shutdown();
+    }
+
+    /**
+     * Set stock levels, adding products that do not exist yet. The levels are applied as a set: new products are
+     * added with one merge and all levels are set with another, in one transaction holding the stock locks of the
+     * changed keys, which is retried on transient conflicts. When a product and location occurs more than once, the
+     * last level wins.
+     *
+     * @param stockLevels stock levels, with product names for new products
+     */
     public void setStockLevels(List<Stock> stockLevels) throws StockingException {
-        try {
-            Map<String, String> productMap = getProductMap();
-            for (Stock stock : stockLevels) {
-                if (!productMap.containsKey(stock.getProductId())) {
-                    if (stock.getProductName() == null) {
-                        throw new StockingException("ProductID [" + stock.getProductId() + "] is missing product name value");
-                    }
-                    Product product = new Product(stock.getProductId(), stock.getProductName());
-                    stockRepository.save(product);
+        Set<String> productIds = new HashSet<>();
+        for (Stock stock : stockLevels) {
+            productIds.add(stock.getProductId());
+        }
+        for (Product product : stockRepository.findProducts(productIds)) {
+            productIds.remove(product.getId());
+        }
+        Map<String, Product> newProducts = new TreeMap<>();
+        Map<Item, Item> levels = new HashMap<>();
+        for (Stock stock : stockLevels) {
+            if (productIds.contains(stock.getProductId()) && !newProducts.containsKey(stock.getProductId())) {
+                if (stock.getProductName() == null) {
+                    throw new StockingException("ProductID [" + stock.getProductId() + "] is missing product name value");
                 }
-                Item item = new Item(stock.getProductId(), stock.getLocationCode(), stock.getQuantity());
-                stockRepository.save(item);
+                newProducts.put(stock.getProductId(), new Product(stock.getProductId(), stock.getProductName()));
             }
+            Item item = new Item(stock.getProductId(), stock.getLocationCode(), stock.getQuantity());
+            levels.remove(item);
+            levels.put(item, item);
+        }
+        List<Item> items = new ArrayList<>(levels.values());
+        items.sort(Comparator.comparing(Item::getProductId).thenComparing(Item::getLocationCode));
+
+        try {
+            stockRetry.execute("Setting " + items.size() + " stock levels", () ->
+                    stockLocks.withLocks(items, () -> transactionTemplate.execute(status -> {
+                        stockRepository.mergeProducts(new ArrayList<>(newProducts.values()));
+                        stockRepository.mergeItems(items);
+                        return null;
+                    })));
         } catch (DataAccessException e) {
-            throw new StockingException(e.getCause().getMessage());
+            throw new StockingException(e.getMostSpecificCause().getMessage());
         }
+        levelsSet.increment(stockLevels.size());
     }
 
-    @Transactional
+    /**
+     * Add quantity changes to stock levels. Changes are folded into one net change per product and location, and
+     * written in product and location order in one transaction, holding the stock locks of the changed keys when
+     * there are few. Concurrent requests changing overlapping stock levels therefore take turns instead of
+     * deadlocking. With
+     * <code>sms.ledger.enabled</code> the changes are validated and journaled, and written to the database by the
+     * stock ledger shortly after.
+     *
+     * @param stockLevels quantity changes
+     */
     public void updateStockLevels(List<Stock> stockLevels) throws StockingException {
+        Set<String> productIds = new HashSet<>();
+        for (Stock stock : stockLevels) {
+            productIds.add(stock.getProductId());
+        }
+        for (Product product : stockRepository.findProducts(productIds)) {
+            productIds.remove(product.getId());
+        }
+        for (Stock stock : stockLevels) {
+            // an id the database returned spelled differently, for instance in case, is checked on its own
+            if (productIds.contains(stock.getProductId()) && getProductName(stock.getProductId()) == null) {
+                throw new StockingException("ProductID [" + stock.getProductId() + "] is invalid");
+            }
+        }
+        if (stockLedger.isEnabled()) {
+            stockLedger.add(stockLevels);
+            changesApplied.increment(stockLevels.size());
+            return;
+        }
+
+        StockDeltas deltas = new StockDeltas();
+        for (int i = 0; i < stockLevels.size(); i++) {
+            Stock stock = stockLevels.get(i);
+            deltas.add(stock.getProductId(), stock.getLocationCode(), stock.getQuantity(), i + 1);
+        }
         try {
-            Map<String, String> productMap = getProductMap();
-            for (Stock stock : stockLevels) {
-                if (!productMap.containsKey(stock.getProductId())) {
-                    throw new StockingException("ProductID [" + stock.getProductId() + "] is invalid");
-                }
+            applyLocked(deltas);
+        } catch (DataAccessException e) {
+            throw new StockingException(e.getMostSpecificCause().getMessage());
+        }
+        changesApplied.increment(stockLevels.size());
+    }
+
+    /**
+     * Set stock levels read one at a time, as <code>setStockLevels(List)</code> does for each batch of
+     * <code>sms.ingest.chunk-size</code> stock levels. See <code>applyBatches</code>.
+     *
+     * @param stockLevels stock levels, with product names for new products
+     * @return number of stock levels read
+     */
+    public int setStockLevels(Iterator<Stock> stockLevels) throws StockingException {
+        return applyBatches(stockLevels, this::setStockLevels);
+    }
+
+    /**
+     * Add quantity changes read one at a time, as <code>updateStockLevels(List)</code> does for each batch of
+     * <code>sms.ingest.chunk-size</code> changes. See <code>applyBatches</code>.
+     *
+     * @param stockLevels quantity changes
+     * @return number of changes read
+     */
+    public int updateStockLevels(Iterator<Stock> stockLevels) throws StockingException {
+        return applyBatches(stockLevels, this::updateStockLevels);
+    }
 
-                Item item = new Item(stock.getProductId(), stock.getLocationCode(), stock.getQuantity());
-                stockRepository.addQuantity(item);
+    /**
+     * Collect stock levels into batches of <code>sms.ingest.chunk-size</code> and apply each batch in its own
+     * transaction. Batches are applied by a separate thread while reading continues, with at most
+     * <code>sms.ingest.queue-capacity</code> batches waiting, so memory stays bounded and a slow database slows down
+     * reading. When a batch fails, the batches before it stay committed and the rest is not applied.
+     *
+     * @return number of stock levels read
+     */
+    private int applyBatches(Iterator<Stock> stockLevels, Consumer<List<Stock>> apply) {
+        PipelinedWriter writer = new PipelinedWriter(ingestWriters, queueCapacity);
+        int[] committed = new int[1];
+        int read = 0;
+        List<Stock> batch = new ArrayList<>();
+        StockingException failure = null;
+        try {
+            try {
+                while (stockLevels.hasNext()) {
+                    batch.add(stockLevels.next());
+                    if (++read % chunkSize == 0 || !stockLevels.hasNext()) {
+                        List<Stock> full = batch;
+                        int from = read - full.size() + 1;
+                        int to = read;
+                        writer.submit(() -> {
+                            try {
+                                apply.accept(full);
+                            } catch (StockBusyException e) {
+                                throw new StockBusyException("[Stock#" + from + "-" + to + "] " + e.getMessage());
+                            } catch (StockingException e) {
+                                throw new StockingException("[Stock#" + from + "-" + to + "] " + e.getMessage());
+                            }
+                            committed[0] = to;
+                        });
+                        batch = new ArrayList<>();
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                failure = new StockingException("Problem with input stream; " + e.getCause().getMessage());
+            } catch (StockingException e) {
+                failure = e;
             }
-        } catch (DataAccessException e) {
-            throw new StockingException(e.getCause().getMessage());
+            writer.finish();
+        } catch (StockingException e) {
+            failure = e;
+        } finally {
+            // stops the writer thread when reading or writing failed unexpectedly
+            writer.abort();
+        }
+        if (failure != null) {
+            String message = committed[0] == 0 ? failure.getMessage()
+                    : failure.getMessage() + "; stock levels up to " + committed[0] + " are committed";
+            throw failure instanceof StockBusyException ? new StockBusyException(message) : new StockingException(message);
         }
+        return read;
+    }
+
+    /**
+     * Write net changes in key order in one transaction, holding the stock locks of their keys until it commits. The
+     * write is retried on transient conflicts, releasing the locks while waiting.
+     *
+     * @return the items written, in key order
+     * @throws StockBusyException when the write keeps failing on transient conflicts
+     */
+    private List<Item> applyLocked(StockDeltas deltas) {
+        deltas.sort();
+        List<Item> items = deltas.toItems();
+        stockRetry.execute("Writing " + items.size() + " stock level changes", () ->
+                stockLocks.withLocks(items, () -> transactionTemplate.execute(status -> {
+                    for (int from = 0; from < items.size(); from += chunkSize) {
+                        stockRepository.addQuantities(items.subList(from, Math.min(items.size(), from + chunkSize)));
+                    }
+                    return null;
+                })));
+        return items;
     }
 
     /**
      * Read lines and update stock level
      * @param inputStream of lines : productId,change,location
      */
-    @Transactional
     public int updateStockLevels(InputStream inputStream) {
-        //BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream),1024*1024);
+        return updateStockLevels(inputStream, 0);
+    }
+
+    /**
+     * Read lines and update stock level
+     * @param inputStream of lines : productId,change,location
+     * @param resumeAfter number of leading lines to skip, as they were committed by an earlier upload
+     * @return number of lines read, including the skipped lines
+     */
+    public int updateStockLevels(InputStream inputStream, int resumeAfter) {
+        IngestProgress progress = new IngestProgress();
+        ingestStockLevels(inputStream, resumeAfter, progress);
+        return progress.getLinesParsed();
+    }
+
+    /**
+     * Read lines and update stock level. Lines are applied in chunks of <code>sms.ingest.chunk-size</code> lines,
+     * each committed in its own transaction. Changes within a chunk are first folded into one net change per
+     * product and location. Chunks are written by a separate thread while reading continues, with at most
+     * <code>sms.ingest.queue-capacity</code> chunks waiting, so a slow database slows down reading instead of
+     * buffering the input. When a line fails, every line up to the last checkpoint stays committed and the
+     * upload can be repeated with <code>resumeAfter</code> set to that checkpoint.
+     *
+     * @param inputStream of lines : productId,change,location
+     * @param resumeAfter number of leading lines to skip, as they were committed by an earlier upload
+     * @param progress    receives lines and bytes read and lines applied while the ingest runs
+     */
+    public void ingestStockLevels(InputStream inputStream, int resumeAfter, IngestProgress progress) {
+        StockChangeParser parser = new StockChangeParser();
+        parser.skipLines(resumeAfter);
+        ChunkedChanges changes = new ChunkedChanges(parser, progress, resumeAfter);
+        progress.start();
+        StockingException failure = null;
         try {
-            int lineCount = 0;
-            Scanner sc = new Scanner(inputStream, "UTF-8");
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                if (line == null || line.length() == 0) continue;
-                lineCount++;
-                if (lineCount == 591) {
-                    System.out.println("This is the line");
-                }
-                String[] values = line.split("\\s?,\\s?");
-                if (values.length != 3) {
-                    throw new StockingException("[Line#" + lineCount + "] line formatting is invalid [" + line + "]");
-                }
-                try {
-                    Item item = new Item(values[0], values[2], Integer.parseInt(values[1]));
-                    stockRepository.addQuantity(item);
-                } catch (NumberFormatException nfe) {
-                    throw new StockingException("[Line#" + lineCount + "] quantity [" + values[2] + "] is invalid [" + line + "]");
-                }
+            try {
+                parser.parse(inputStream, changes);
+                changes.flush();
+            } catch (IOException e) {
+                failure = new StockingException("Problem with input stream; " + e.getMessage());
+            } catch (StockingException e) {
+                failure = e;
             }
-            return lineCount;
+            changes.writer.finish();
+        } catch (StockingException e) {
+            failure = e;
+        } finally {
+            // stops the writer thread when parsing or writing failed unexpectedly
+            changes.writer.abort();
+            progress.finish();
+        }
+        if (failure instanceof StockBusyException) {
+            throw new StockBusyException(checkpointed(failure.getMessage(), changes.committed));
+        } else if (failure != null) {
+            throw new StockingException(checkpointed(failure.getMessage(), changes.committed));
+        }
+        logger.info("Ingested " + progress.getLinesParsed() + " lines in " + progress.getElapsedMillis() + " ms, "
+                + progress.getLinesPerSecond() + " lines/s, " + progress.getBytesPerSecond() + " bytes/s");
+    }
+
+    /**
+     * Read a local file of lines and update stock level. The file is parsed in parallel into one net change per
+     * product and location, which are then written in key order in batches of <code>sms.ingest.chunk-size</code>
+     * within a single transaction.
+     *
+     * @param file of lines : productId,change,location
+     * @return number of lines read
+     */
+    public int importStockLevels(Path file) {
+        StockDeltas deltas = new StockDeltas();
+        int lineCount;
+        try {
+            lineCount = stockFileImporter.read(file, deltas);
+        } catch (IOException e) {
+            throw new StockingException("Problem reading file; " + e.getMessage());
+        }
+        if (deltas.isEmpty()) return lineCount;
+
+        List<Item> items;
+        try {
+            items = applyLocked(deltas);
         } catch (DataAccessException e) {
-            throw new StockingException(e.getCause().getMessage());
-        //} catch (IOException e) {
-          //  throw new StockingException("Problem with input stream; " + e.getMessage());
+            items = deltas.toItems();
+            int failed = locateFailure(items);
+            String line = failed < 0 ? "[Line#1-" + lineCount + "]" : "[Line#" + deltas.getFirstLine(failed) + "]";
+            throw new StockingException(line + " " + e.getMostSpecificCause().getMessage());
         }
+        linesImported.increment(lineCount);
+        logger.info("Imported " + lineCount + " lines from " + file + ", " + items.size() + " items changed");
+        return lineCount;
     }
 
-    public List<Stock> getStockLevels() {
+    /**
+     * Collects parsed changes into chunks of <code>sms.ingest.chunk-size</code> lines and queues each full chunk
+     * for writing.
+     */
+    private class ChunkedChanges implements StockChangeHandler {
+        private final PipelinedWriter writer = new PipelinedWriter(ingestWriters, queueCapacity);
+        private final StockChangeParser parser;
+        private final IngestProgress progress;
+        private StockDeltas chunk = new StockDeltas();
+        private int checkpoint;
+        private int lastLine;
+        private volatile int committed;
 
-        Map<String, String> productMap = getProductMap();
-        List<Item> items = stockRepository.findAllItems();
-        ArrayList<Stock> stocks = new ArrayList<>();
-        for (Item item : items) {
-            String productName = productMap.containsKey(item.getProductId()) ?
-                    productMap.get(item.getProductId()) : "missing";
-            stocks.add(new Stock(item.getProductId(), productName, item.getLocationCode(), item.getQuantity()));
+        ChunkedChanges(StockChangeParser parser, IngestProgress progress, int checkpoint) {
+            this.parser = parser;
+            this.progress = progress;
+            this.checkpoint = checkpoint;
+            this.lastLine = checkpoint;
+            this.committed = checkpoint;
         }
-        return stocks;
 
+        @Override
+        public void onChange(StockChangeRecord record) {
+            lastLine = record.getLineNumber();
+            chunk.add(record.getProductId(), record.getLocationCode(), record.getQuantity(), lastLine);
+            if (lastLine - checkpoint == chunkSize) flush();
+        }
+
+        void flush() {
+            StockDeltas full = chunk;
+            int from = checkpoint;
+            int to = parser.getLineCount();
+            writer.submit(() -> {
+                applyChunk(full, from, to);
+                linesUploaded.increment(to - from);
+                committed = to;
+                progress.applied(to);
+            });
+            progress.parsed(to, parser.getBytesRead());
+            checkpoint = to;
+            chunk = new StockDeltas();
+        }
+    }
+
+    /**
+     * Apply the net changes of one chunk in its own transaction. When the chunk fails, its changes are replayed one
+     * at a time in a transaction that is rolled back, to report the line of the change that caused the failure.
+     *
+     * @param chunk      net quantity changes read from the lines after <code>checkpoint</code>
+     * @param checkpoint last line committed before this chunk
+     * @param lastLine   last line of this chunk
+     */
+    private void applyChunk(StockDeltas chunk, int checkpoint, int lastLine) {
+        if (chunk.isEmpty()) return;
+        List<Item> items;
+        try {
+            items = applyLocked(chunk);
+        } catch (DataAccessException e) {
+            items = chunk.toItems();
+            int failed = locateFailure(items);
+            String line = failed < 0 ? "[Line#" + (checkpoint + 1) + "-" + lastLine + "]" : "[Line#" + chunk.getFirstLine(failed) + "]";
+            throw new StockingException(line + " " + e.getMostSpecificCause().getMessage());
+        }
+        logger.debug("Stock level changes committed up to line " + lastLine + ", " + items.size() + " items changed");
+    }
+
+    private int locateFailure(List<Item> items) {
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            for (int i = 0; i < items.size(); i++) {
+                try {
+                    stockRepository.addQuantity(items.get(i));
+                } catch (DataAccessException e) {
+                    return i;
+                }
+            }
+            return -1;
+        });
+    }
+
+    private static String checkpointed(String message, int checkpoint) {
+        return checkpoint == 0 ? message : message + "; lines up to checkpoint " + checkpoint + " are committed";
+    }
+
+    public List<Stock> getStockLevels() {
+        return toStocks(stockRepository.findAllItems());
     }
 
     public List<Stock> getStockLevels(List<String> productIds) {
-        Map<String, String> productMap = getProductMap();
-        List<Item> items = stockRepository.findItems(productIds);
+        return toStocks(stockRepository.findItems(productIds));
+    }
+
+    /**
+     * Get one page of stock levels, in the order of <code>getStockLevels()</code>.
+     *
+     * @param after token of the previous page, null for the first page
+     * @param limit maximum number of stock levels on the page, at most <code>sms.page.max-size</code>
+     */
+    public StockPage getStockLevels(String after, int limit) throws StockingException {
+        if (limit < 1) {
+            throw new StockingException("Page limit [" + limit + "] is invalid");
+        }
+        limit = Math.min(limit, maxPageSize);
+
+        String productId = null;
+        String locationCode = null;
+        if (after != null) {
+            String key;
+            try {
+                key = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new StockingException("Page token [" + after + "] is invalid");
+            }
+            int separator = key.indexOf('\0');
+            if (separator < 0) {
+                throw new StockingException("Page token [" + after + "] is invalid");
+            }
+            productId = key.substring(0, separator);
+            locationCode = key.substring(separator + 1);
+        }
+
+        // read one item more than the limit to know if there is a next page
+        List<Item> items = stockRepository.findItemsAfter(productId, locationCode, limit + 1);
+        String next = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            Item last = items.get(limit - 1);
+            String key = last.getProductId() + '\0' + last.getLocationCode();
+            next = Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+        return new StockPage(toStocks(items), next);
+    }
+
+    /**
+     * Walk all stock levels without loading them all, in the order of <code>getStockLevels()</code>.
+     *
+     * @param consumer receives each stock level as it is read
+     */
+    public void forEachStockLevel(Consumer<Stock> consumer) {
+        stockRepository.forEachItem((item, productName) ->
+                consumer.accept(new Stock(item.getProductId(), productName != null ? productName : "missing",
+                        item.getLocationCode(), item.getQuantity())));
+    }
+
+    /**
+     * Add product names to items, looking up only the products the items refer to.
+     */
+    private List<Stock> toStocks(List<Item> items) {
+        Set<String> productIds = new HashSet<>();
+        for (Item item : items) {
+            productIds.add(item.getProductId());
+        }
+        Map<String, String> productNames = new HashMap<>();
+        for (Product product : stockRepository.findProducts(productIds)) {
+            productNames.put(product.getId(), product.getName());
+        }
         ArrayList<Stock> stocks = new ArrayList<>();
         for (Item item : items) {
-            String productName = productMap.containsKey(item.getProductId()) ?
-                    productMap.get(item.getProductId()) : "missing";
+            String productName = productNames.containsKey(item.getProductId()) ?
+                    productNames.get(item.getProductId()) : "missing";
             stocks.add(new Stock(item.getProductId(), productName, item.getLocationCode(), item.getQuantity()));
         }
         return stocks;
     }
 
-    private Map<String, String> getProductMap() {
-        HashMap<String, String> productMap = new HashMap<>();
-        List<Product> products = stockRepository.findAllProducts();
-        for (Product product : products) {
-            productMap.put(product.getId(), product.getName());
-        }
-        return productMap;
+    /**
+     * @return statistics of the product catalog and the item cache
+     */
+    public List<CacheStats> getCacheStats() {
+        return Arrays.asList(productCatalog.getStats(), itemCache.getStats());
+    }
+
+    /**
+     * Load all products into the product catalog once the application is ready, so the first requests are served
+     * from the catalog.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmProductCatalog() {
+        if (!warmCatalog) return;
+        logger.info("Product catalog warmed with " + stockRepository.findAllProducts().size() + " products");
+    }
+
+    /**
+     * @return name of the product, looked up through the product catalog, or null when the product does not exist
+     */
+    private String getProductName(String productId) {
+        Product product = stockRepository.findProduct(productId);
+        return product != null ? product.getName() : null;
     }
 
 }
@@ -0,0 +1,28 @@
+package org.lab.sms.logic;
+
+import java.util.List;
+
+/**
+ * One page of stock levels, with the token continuing after its last stock level.
+ */
+public class StockPage {
+
+    private final List<Stock> stocks;
+    private final String next;
+
+    public StockPage(List<Stock> stocks, String next) {
+        this.stocks = stocks;
+        this.next = next;
+    }
+
+    public List<Stock> getStocks() {
+        return stocks;
+    }
+
+    /**
+     * @return token to pass as <code>after</code> for the next page, or null when this is the last page
+     */
+    public String getNext() {
+        return next;
+    }
+}
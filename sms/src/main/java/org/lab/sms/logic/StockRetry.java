@@ -0,0 +1,105 @@
+package org.lab.sms.logic;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lab.sms.StockBusyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Retries writes that failed on a transient conflict, such as being chosen as deadlock victim (SQL Server error
+ * 1205) or a lock request timing out (error 1222). Each retry waits a random time up to an exponentially growing
+ * bound, starting at <code>sms.retry.initial-backoff</code> and capped at <code>sms.retry.max-backoff</code>
+ * milliseconds, for at most <code>sms.retry.max-attempts</code> attempts.
+ * <p/>
+ * A write must be retried as a whole, so it is retried outside of its transaction and locks.
+ */
+@Component
+public class StockRetry {
+
+    private static final Log logger = LogFactory.getLog(StockRetry.class);
+
+    private static final int DEADLOCK_VICTIM = 1205;
+    private static final int LOCK_TIMEOUT = 1222;
+
+    @Value("${sms.retry.max-attempts:4}")
+    int maxAttempts;
+
+    @Value("${sms.retry.initial-backoff:20}")
+    long initialBackoff;
+
+    @Value("${sms.retry.max-backoff:1000}")
+    long maxBackoff;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhaustions = new AtomicLong();
+
+    /**
+     * Run a write, retrying it on transient conflicts.
+     *
+     * @param operation name of the write, for logging
+     * @param write     write to run, including its transaction
+     * @throws StockBusyException when the write still fails on a transient conflict after the last attempt
+     */
+    public <T> T execute(String operation, Supplier<T> write) throws StockBusyException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return write.get();
+            } catch (DataAccessException e) {
+                if (!isTransient(e)) throw e;
+                if (attempt >= maxAttempts) {
+                    exhaustions.incrementAndGet();
+                    logger.warn(operation + " failed after " + attempt + " attempts; " + e.getMostSpecificCause().getMessage());
+                    throw new StockBusyException("Stock levels are busy, please retry; " + e.getMostSpecificCause().getMessage());
+                }
+                retries.incrementAndGet();
+                long bound = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 20));
+                long backoff = ThreadLocalRandom.current().nextLong(bound + 1);
+                logger.debug(operation + " attempt " + attempt + " failed, retrying in " + backoff + " ms; "
+                        + e.getMostSpecificCause().getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true when the write failed on a conflict that may not occur again
+     */
+    public static boolean isTransient(DataAccessException e) {
+        if (e instanceof ConcurrencyFailureException || e instanceof TransientDataAccessException) return true;
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                int errorCode = ((SQLException) cause).getErrorCode();
+                if (errorCode == DEADLOCK_VICTIM || errorCode == LOCK_TIMEOUT) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of retried attempts
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return number of writes that failed on a transient conflict after the last attempt
+     */
+    public long getExhaustions() {
+        return exhaustions.get();
+    }
+}
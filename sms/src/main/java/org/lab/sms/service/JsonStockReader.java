@@ -0,0 +1,80 @@
+package org.lab.sms.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.lab.sms.StockingException;
+import org.lab.sms.logic.Stock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads stock levels one at a time from a JSON array of stock objects, or from a sequence of stock objects such as
+ * an <code>application/x-ndjson</code> body, so the body is never held in memory as a whole.
+ */
+class JsonStockReader implements Iterator<Stock>, Closeable {
+
+    private final JsonParser parser;
+    private final ObjectReader stockReader;
+    private final boolean array;
+    private int count;
+
+    JsonStockReader(ObjectMapper objectMapper, InputStream inputStream) throws IOException {
+        this.parser = objectMapper.getFactory().createParser(inputStream);
+        this.stockReader = objectMapper.readerFor(Stock.class);
+        this.array = parser.nextToken() == JsonToken.START_ARRAY;
+        if (array) nextToken();
+    }
+
+    @Override
+    public boolean hasNext() {
+        JsonToken token = parser.currentToken();
+        return token != null && !(array && token == JsonToken.END_ARRAY);
+    }
+
+    /**
+     * @throws StockingException    when the next element is not a valid stock object
+     * @throws UncheckedIOException when the body cannot be read
+     */
+    @Override
+    public Stock next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        count++;
+        Stock stock;
+        try {
+            stock = stockReader.readValue(parser);
+        } catch (JsonProcessingException e) {
+            throw invalid(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextToken();
+        return stock;
+    }
+
+    private void nextToken() {
+        try {
+            parser.nextToken();
+        } catch (JsonProcessingException e) {
+            throw invalid(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private StockingException invalid(JsonProcessingException e) {
+        return new StockingException("[Stock#" + Math.max(1, count) + "] " + e.getOriginalMessage());
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -1,6 +1,7 @@
 package org.lab.sms.service;
 
 import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.lab.sms.StockBusyException;
 import org.lab.sms.StockingException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +25,15 @@ public class ServiceExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(errors, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(StockBusyException.class)
+    public ResponseEntity<ServiceErrorResponse> stockingBusy(Exception ex, WebRequest request) {
+        ServiceErrorResponse errors = new ServiceErrorResponse();
+        errors.setTimestamp(LocalDateTime.now());
+        errors.setError(ex.getMessage());
+        errors.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        return new ResponseEntity<>(errors, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler({FileUploadException.class, IOException.class})
     public ResponseEntity<ServiceErrorResponse> fileUploadFailure(Exception ex, WebRequest request) {
         ServiceErrorResponse errors = new ServiceErrorResponse();
@@ -1,30 +1,71 @@
 package org.lab.sms.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.tomcat.util.http.fileupload.FileItemIterator;
 import org.apache.tomcat.util.http.fileupload.FileItemStream;
 import org.apache.tomcat.util.http.fileupload.FileUploadException;
 import org.apache.tomcat.util.http.fileupload.servlet.ServletFileUpload;
+import org.lab.sms.dataaccess.CacheStats;
+import org.lab.sms.dataaccess.StatementProfiler;
+import org.lab.sms.dataaccess.StatementStats;
+import org.lab.sms.logic.BulkLoadResult;
+import org.lab.sms.logic.ImportJob;
+import org.lab.sms.logic.ImportJobs;
+import org.lab.sms.logic.IngestProgress;
 import org.lab.sms.logic.Stock;
+import org.lab.sms.logic.StockBulkLoader;
 import org.lab.sms.logic.StockManager;
+import org.lab.sms.logic.StockPage;
 import org.lab.sms.StockingException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 
 @RestController
 @Validated
 public class StockController {
 
+    private static final Log logger = LogFactory.getLog(StockController.class);
+
+    static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     StockManager stockManager;
 
+    @Autowired
+    ImportJobs importJobs;
+
+    @Autowired
+    StockBulkLoader stockBulkLoader;
+
+    @Autowired
+    StatementProfiler statementProfiler;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${sms.import.directory}")
+    String importDirectory;
+
     public StockController() {
     }
 
@@ -42,20 +83,174 @@ public class StockController {
         return "Success";
     }
 
+    /**
+     * Streaming variant of <code>POST /stock/level</code> for large bodies, reading a JSON array or a sequence of
+     * stock objects one element at a time and committing them in batches.
+     */
+    @PostMapping(value = "/stock/level", params = "stream=true")
+    @ResponseStatus(HttpStatus.OK)
+    String setStockLevelsStreamed(final HttpServletRequest request) throws StockingException, IOException {
+        try (JsonStockReader stocks = new JsonStockReader(objectMapper, request.getInputStream())) {
+            return "Success with " + stockManager.setStockLevels(stocks) + " stock levels processed";
+        }
+    }
+
+    /**
+     * Streaming variant of <code>PATCH /stock/level</code> for large bodies, reading a JSON array or a sequence of
+     * stock objects one element at a time and committing them in batches.
+     */
+    @PatchMapping(value = "/stock/level", params = "stream=true")
+    @ResponseStatus(HttpStatus.OK)
+    String updateStockLevelStreamed(final HttpServletRequest request) throws StockingException, IOException {
+        try (JsonStockReader stocks = new JsonStockReader(objectMapper, request.getInputStream())) {
+            return "Success with " + stockManager.updateStockLevels(stocks) + " stock levels processed";
+        }
+    }
+
     @GetMapping("/stock/level")
     @ResponseStatus(HttpStatus.OK)
     List<Stock> getStockLevel() throws StockingException {
         return stockManager.getStockLevels();
     }
 
+    @GetMapping("/stock/cache")
+    @ResponseStatus(HttpStatus.OK)
+    List<CacheStats> getCacheStats() {
+        return stockManager.getCacheStats();
+    }
+
+    @GetMapping("/stock/statements")
+    @ResponseStatus(HttpStatus.OK)
+    List<StatementStats> getStatementStats(@RequestParam(defaultValue = "${sms.profiler.top:20}") int limit) {
+        return statementProfiler.getTopStatements(limit);
+    }
+
+    @DeleteMapping("/stock/statements")
+    @ResponseStatus(HttpStatus.OK)
+    String resetStatementStats() {
+        statementProfiler.reset();
+        return "Success";
+    }
+
+    @GetMapping(value = "/stock/level", produces = NDJSON)
+    void streamStockLevel(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        try (SequenceWriter writer = objectMapper.writerFor(Stock.class)
+                .withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            writeStockLevels(writer);
+            writer.flush();
+            response.getOutputStream().write('\n');
+        }
+    }
+
+    @GetMapping(value = "/stock/level", params = "stream=true")
+    void streamStockLevelArray(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (SequenceWriter writer = objectMapper.writerFor(Stock.class)
+                .writeValuesAsArray(response.getOutputStream())) {
+            writeStockLevels(writer);
+        }
+    }
+
     @GetMapping(value = "/stock/level", params = "ids")
     @ResponseStatus(HttpStatus.OK)
     List<Stock> getStockLevel(@RequestParam List<String> ids) throws StockingException {
         return stockManager.getStockLevels(ids);
     }
 
+    /**
+     * Stock levels of products, for id lists too long for a query string.
+     */
+    @PostMapping("/stock/level/query")
+    @ResponseStatus(HttpStatus.OK)
+    List<Stock> queryStockLevel(@RequestBody List<String> ids) throws StockingException {
+        return stockManager.getStockLevels(ids);
+    }
+
+    @GetMapping("/stock/level/page")
+    @ResponseStatus(HttpStatus.OK)
+    StockPage getStockLevelPage(@RequestParam(required = false) String after,
+                                @RequestParam(defaultValue = "${sms.page.default-size:100}") int limit) throws StockingException {
+        return stockManager.getStockLevels(after, limit);
+    }
+
     @PostMapping("/stock/level/file-upload")
-    public String handleFileUpload(final HttpServletRequest request) throws FileUploadException, IOException {
+    public String handleFileUpload(final HttpServletRequest request,
+                                   @RequestParam(defaultValue = "0") int resumeAfter) throws FileUploadException, IOException {
+
+        FileItemStream item = nextFile(request);
+
+        if (item != null) {
+            IngestProgress progress = new IngestProgress();
+            stockManager.ingestStockLevels(item.openStream(), resumeAfter, progress);
+            return "Success with " + progress.getLinesParsed() + " lines processed ("
+                    + progress.getLinesPerSecond() + " lines/s, " + progress.getBytesPerSecond() + " bytes/s)";
+        } else {
+            return "No file uploaded to process";
+        }
+    }
+
+    @PostMapping("/stock/level/bulk-load")
+    public BulkLoadResult handleBulkLoad(final HttpServletRequest request,
+                                         @RequestParam(defaultValue = "${sms.bulk-load.commit-interval:50000}") int commitInterval)
+            throws FileUploadException, IOException {
+
+        FileItemStream item = nextFile(request);
+
+        if (item == null) {
+            throw new StockingException("No file uploaded to process");
+        }
+        try (InputStream fileStream = item.openStream()) {
+            return stockBulkLoader.load(fileStream, commitInterval);
+        }
+    }
+
+    @PostMapping("/stock/import")
+    public ResponseEntity<ImportJob> submitImport(final HttpServletRequest request) throws FileUploadException, IOException {
+
+        FileItemStream item = nextFile(request);
+
+        if (item == null) {
+            throw new StockingException("No file uploaded to process");
+        }
+
+        // spool the upload so the request thread is released while the job runs
+        Path file = Files.createTempFile("stock-import-", ".txt");
+        try (InputStream fileStream = item.openStream()) {
+            Files.copy(fileStream, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new ResponseEntity<>(importJobs.submit(file, item.getName()), HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/stock/import/{id}")
+    public ResponseEntity<ImportJob> getImport(@PathVariable String id) {
+        ImportJob job = importJobs.getJob(id);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/stock/level/file-import")
+    public String handleFileImport(@RequestParam String file) throws StockingException {
+
+        // only files inside the import directory may be imported
+        Path directory = Paths.get(importDirectory).toAbsolutePath().normalize();
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory) || !Files.isRegularFile(path)) {
+            throw new StockingException("File [" + file + "] is not available for import");
+        }
+
+        return "Success with " + stockManager.importStockLevels(path) + " lines processed";
+    }
+
+    /**
+     * Find the first file in a multipart request.
+     *
+     * @return the file, with its stream not yet opened, or null when the request holds no file
+     */
+    private FileItemStream nextFile(final HttpServletRequest request) throws FileUploadException, IOException {
 
         boolean isMultipart = ServletFileUpload.isMultipartContent(request);
 
@@ -66,30 +261,36 @@ public class StockController {
         // Create a new file upload handler
         ServletFileUpload upload = new ServletFileUpload();
 
-        FileItemIterator iter;
-        InputStream fileStream = null;
-        String name = null;
-
         // retrieve the multi-part constituent items parsed from the request
-        iter = upload.getItemIterator(request);
+        FileItemIterator iter = upload.getItemIterator(request);
 
         // loop through each item
         while (iter.hasNext()) {
             FileItemStream item = iter.next();
-            name = item.getName();
-            fileStream = item.openStream();
 
             // check if the item is a file
             if (!item.isFormField()) {
-                System.out.println("Receiving file " + item.getName());
-                break; // break here so that the input stream can be processed
+                logger.debug("Receiving file " + item.getName());
+                return item; // return here so that the input stream can be processed
             }
         }
+        return null;
+    }
 
-        if (fileStream != null) {
-            return "Success with " + stockManager.updateStockLevels(fileStream) + " lines processed";
-        } else {
-            return "No file uploaded to process";
+    /**
+     * Write each stock level as it is read from the database.
+     */
+    private void writeStockLevels(SequenceWriter writer) throws IOException {
+        try {
+            stockManager.forEachStockLevel(stock -> {
+                try {
+                    writer.write(stock);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 }
@@ -0,0 +1,266 @@
+package org.lab.sms.service;
+
+import org.lab.sms.logic.Stock;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact columnar encoding of stock levels, media type <code>application/x-sms-stock</code>. Product ids with their
+ * names and location codes are each written once in a dictionary, followed by one column per field:
+ * <pre>
+ * "SMS1"
+ * rows
+ * products  : count, then per product: id, name
+ * locations : count, then per location: code
+ * product   : per row, index into products minus the index of the previous row, zigzag
+ * location  : per row, index into locations
+ * quantity  : per row, zigzag
+ * </pre>
+ * Numbers are unsigned LEB128 varints; zigzag numbers map small negative values to small varints. Strings are the
+ * varint length of their UTF-8 bytes plus one followed by the bytes, with 0 for null. Rows ordered by product, as
+ * the stock level reads return them, encode the product column in one byte per row.
+ */
+public class StockLevelCodec {
+
+    public static final String MEDIA_TYPE = "application/x-sms-stock";
+
+    private static final byte[] MAGIC = {'S', 'M', 'S', '1'};
+
+    // longer than any product name or code, bounds what a body can make the decoder allocate
+    private static final int MAX_STRING_BYTES = 64 * 1024;
+
+    private StockLevelCodec() {
+    }
+
+    public static void encode(List<Stock> stocks, OutputStream outputStream) throws IOException {
+        int rows = stocks.size();
+        Map<String, Integer> productIndex = new HashMap<>();
+        Map<String, Integer> locationIndex = new HashMap<>();
+        List<Stock> products = new ArrayList<>();
+        List<String> locations = new ArrayList<>();
+        int[] productColumn = new int[rows];
+        int[] locationColumn = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            Stock stock = stocks.get(i);
+            Integer product = productIndex.putIfAbsent(stock.getProductId(), products.size());
+            if (product == null) {
+                product = products.size();
+                products.add(stock);
+            }
+            Integer location = locationIndex.putIfAbsent(stock.getLocationCode(), locations.size());
+            if (location == null) {
+                location = locations.size();
+                locations.add(stock.getLocationCode());
+            }
+            productColumn[i] = product;
+            locationColumn[i] = location;
+        }
+
+        Output out = new Output(outputStream);
+        out.bytes(MAGIC, MAGIC.length);
+        out.varint(rows);
+        out.varint(products.size());
+        for (Stock product : products) {
+            out.string(product.getProductId());
+            out.string(product.getProductName());
+        }
+        out.varint(locations.size());
+        for (String location : locations) {
+            out.string(location);
+        }
+        int previous = 0;
+        for (int product : productColumn) {
+            out.zigzag(product - previous);
+            previous = product;
+        }
+        for (int location : locationColumn) {
+            out.varint(location);
+        }
+        for (Stock stock : stocks) {
+            out.zigzag(stock.getQuantity());
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the stock levels in the order they were encoded; rows of the same product or location share their
+     * strings
+     * @throws IOException when the input is not a complete encoding
+     */
+    public static List<Stock> decode(InputStream inputStream) throws IOException {
+        Input in = new Input(inputStream);
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length; i++) magic[i] = (byte) in.read();
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not an " + MEDIA_TYPE + " body");
+
+        // counts come from the body, so arrays grow while reading instead of being allocated up front
+        int rows = count(in);
+        int productCount = count(in);
+        List<String> productIds = new ArrayList<>();
+        List<String> productNames = new ArrayList<>();
+        for (int i = 0; i < productCount; i++) {
+            productIds.add(in.string());
+            productNames.add(in.string());
+        }
+        int locationCount = count(in);
+        List<String> locations = new ArrayList<>();
+        for (int i = 0; i < locationCount; i++) {
+            locations.add(in.string());
+        }
+        int[] productColumn = column(in, rows, true);
+        int[] locationColumn = column(in, rows, false);
+        List<Stock> stocks = new ArrayList<>(productColumn.length);
+        try {
+            for (int i = 0; i < rows; i++) {
+                int product = productColumn[i];
+                stocks.add(new Stock(productIds.get(product), productNames.get(product),
+                        locations.get(locationColumn[i]), in.zigzag()));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Invalid dictionary index in " + MEDIA_TYPE + " body");
+        }
+        return stocks;
+    }
+
+    private static int count(Input in) throws IOException {
+        int count = in.varint();
+        if (count < 0) throw new IOException("Invalid count in " + MEDIA_TYPE + " body");
+        return count;
+    }
+
+    /**
+     * Read a column of <code>rows</code> dictionary indexes, each stored as the difference to the previous index
+     * when <code>delta</code> is set.
+     */
+    private static int[] column(Input in, int rows, boolean delta) throws IOException {
+        int[] column = new int[Math.min(rows, 65536)];
+        int value = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i == column.length) column = Arrays.copyOf(column, (int) Math.min(rows, i * 2L));
+            value = delta ? value + in.zigzag() : in.varint();
+            column[i] = value;
+        }
+        return column;
+    }
+
+    /**
+     * Buffered writer of varints and strings.
+     */
+    private static class Output {
+        private final OutputStream outputStream;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+
+        Output(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        void varint(int value) throws IOException {
+            if (buffer.length - position < 5) flush();
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void zigzag(int value) throws IOException {
+            varint((value << 1) ^ (value >> 31));
+        }
+
+        void string(String value) throws IOException {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            bytes(bytes, bytes.length);
+        }
+
+        void bytes(byte[] bytes, int length) throws IOException {
+            if (length > buffer.length - position) {
+                flush();
+                if (length > buffer.length) {
+                    outputStream.write(bytes, 0, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+        }
+
+        void flush() throws IOException {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Buffered reader of varints and strings.
+     */
+    private static class Input {
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+
+        Input(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        int read() throws IOException {
+            if (position == limit) {
+                limit = inputStream.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException("Incomplete " + MEDIA_TYPE + " body");
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Invalid varint in " + MEDIA_TYPE + " body");
+        }
+
+        int zigzag() throws IOException {
+            int value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String string() throws IOException {
+            int length = varint() - 1;
+            if (length < 0) return null;
+            if (length > MAX_STRING_BYTES) throw new IOException("String too long in " + MEDIA_TYPE + " body");
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                if (position == limit) {
+                    bytes[i] = (byte) read();
+                } else {
+                    int count = Math.min(length - i, limit - position);
+                    System.arraycopy(buffer, position, bytes, i, count);
+                    position += count;
+                    i += count - 1;
+                }
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.lab.sms.service;
+
+import org.lab.sms.logic.Stock;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Reads and writes <code>List&lt;Stock&gt;</code> bodies in the <code>StockLevelCodec</code> format, for requests
+ * sent or accepting <code>application/x-sms-stock</code>. Registered after the JSON converter by
+ * <code>WebConfig</code>, so clients accepting any media type still get JSON.
+ */
+public class StockLevelMessageConverter extends AbstractGenericHttpMessageConverter<List<Stock>> {
+
+    public StockLevelMessageConverter() {
+        super(MediaType.parseMediaType(StockLevelCodec.MEDIA_TYPE));
+    }
+
+    /**
+     * Only generic types are supported, see <code>isStockList</code>, as a raw <code>List</code> may hold anything
+     * but stock levels.
+     */
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isStockList(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return isStockList(type) && canWrite(mediaType);
+    }
+
+    private static boolean isStockList(Type type) {
+        if (!(type instanceof ParameterizedType)) return false;
+        ParameterizedType parameterized = (ParameterizedType) type;
+        return parameterized.getRawType() instanceof Class
+                && List.class.isAssignableFrom((Class<?>) parameterized.getRawType())
+                && parameterized.getActualTypeArguments()[0] == Stock.class;
+    }
+
+    @Override
+    public List<Stock> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return readInternal(null, inputMessage);
+    }
+
+    @Override
+    protected List<Stock> readInternal(Class<? extends List<Stock>> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try {
+            return StockLevelCodec.decode(inputMessage.getBody());
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(List<Stock> stocks, Type type, HttpOutputMessage outputMessage) throws IOException {
+        StockLevelCodec.encode(stocks, outputMessage.getBody());
+    }
+}
@@ -0,0 +1,26 @@
+-- Stock Management System schema for the h2 profile, H2 in SQL Server compatibility mode
+
+create table if not exists location (
+    code varchar(20) not null,
+    name varchar(100) not null,
+    constraint pk_location primary key (code)
+);
+
+create table if not exists product (
+    id varchar(50) not null,
+    name varchar(200) not null,
+    constraint pk_product primary key (id)
+);
+
+-- stock of a product at a location; the primary key serves lookups by product and by product and location
+create table if not exists item (
+    product_id varchar(50) not null,
+    location_code varchar(20) not null,
+    quantity int not null,
+    constraint pk_item primary key (product_id, location_code),
+    constraint fk_item_product foreign key (product_id) references product (id),
+    constraint fk_item_location foreign key (location_code) references location (code)
+);
+
+-- lookups by location and the foreign key check on deleting a location
+create index if not exists ix_item_location on item (location_code, product_id);
@@ -4,6 +4,9 @@ import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.lab.sms.dataaccess.ItemCache;
+import org.lab.sms.dataaccess.StatementProfiler;
+import org.lab.sms.dataaccess.StatementStats;
 import org.lab.sms.dataaccess.StockRepository;
 import org.lab.sms.domain.Item;
 import org.lab.sms.domain.Location;
@@ -14,12 +17,13 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "sms.profiler.enabled=true")
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 class DataAccessTests {
 
@@ -29,6 +33,12 @@ class DataAccessTests {
     @Autowired
     JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    ItemCache itemCache;
+
+    @Autowired
+    StatementProfiler statementProfiler;
+
     @Test
     @Order(0)
     void contextLoads() {
@@ -103,5 +113,66 @@ class DataAccessTests {
         assertThrows(DataAccessException.class, () -> stockRepository.save(item)); // should fail, prod and location do not exist
     }
 
+    @Test
+    @Order(7)
+    void findProducts() {
+        List<String> productIds = Arrays.asList("GH-100", "MB-2231", "XX-000", "GH-100");
+        assertEquals(2, stockRepository.findProducts(productIds).size());
+    }
+
+    @Test
+    @Order(8)
+    void findItemsCached() {
+        List<String> productIds = Arrays.asList("MB-2231", "GH-100");
+        List<Item> items = stockRepository.findItems(productIds);
+        assertEquals(Arrays.asList("GH-100", "MB-2231"), Arrays.asList(items.get(0).getProductId(), items.get(1).getProductId()));
+        long hits = itemCache.getStats().getHits();
+        assertEquals(items, stockRepository.findItems(productIds));
+        assertEquals(hits + 2, itemCache.getStats().getHits());
+
+        assertEquals(1, stockRepository.addQuantity(new Item("MB-2231", "S2", 5)));
+        assertEquals(25, stockRepository.findItems(productIds).get(1).getQuantity());
+        assertEquals(25, stockRepository.findItem("MB-2231", "S2").getQuantity());
+        assertNull(stockRepository.findItem("MB-2231", "S1"));
+    }
+
+    @Test
+    @Order(9)
+    void profileStatements() {
+        statementProfiler.reset();
+        stockRepository.save(new Item("MB-2231", "S1", 3));
+        stockRepository.save(new Item("MB-2231", "S1", 4));
+        stockRepository.findItems(Arrays.asList("MB-2231"));
+
+        List<StatementStats> top = statementProfiler.getTopStatements(100);
+        StatementStats update = find(top, "update item set quantity = ?");
+        assertEquals(2, update.getExecutions());
+        assertEquals(1, update.getRows());
+        assertEquals(3, update.getAverageBinds());
+        assertEquals(1, find(top, "insert into item").getExecutions());
+        assertEquals(2, find(top, "select * from item where product_id in").getRows());
+        assertEquals(1, statementProfiler.getTopStatements(1).size());
+    }
+
+    @Test
+    @Order(10)
+    void findManyItems() {
+        List<String> productIds = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) productIds.add("XX-" + i);
+        productIds.add("MB-2231");
+        productIds.add(1234, "GH-100");
+        itemCache.clear();
+        statementProfiler.reset();
+
+        List<Item> items = stockRepository.findItems(productIds);
+        assertEquals(stockRepository.findItems(Arrays.asList("GH-100", "MB-2231")), items);
+        List<StatementStats> top = statementProfiler.getTopStatements(100);
+        assertEquals(1, top.stream().filter(s -> s.getSql().startsWith("select * from item where product_id in")).count());
+        assertEquals(3, find(top, "select * from item where product_id in").getExecutions());
+    }
+
+    private static StatementStats find(List<StatementStats> statements, String prefix) {
+        return statements.stream().filter(s -> s.getSql().startsWith(prefix)).findFirst().orElseThrow(AssertionError::new);
+    }
 
 }
@@ -0,0 +1,48 @@
+package org.lab.sms;
+
+import org.junit.jupiter.api.Test;
+import org.lab.sms.domain.Item;
+import org.lab.sms.domain.Location;
+import org.lab.sms.domain.Product;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainTests {
+
+    @Test
+    void compareByKey() {
+        Item item = new Item("GH-123", "S1", 1);
+        Item same = new Item("GH-123", "S1", 2);
+        Item otherProduct = new Item("MB-AC1", "S1", 1);
+        Item otherLocation = new Item("GH-123", "S2", 1);
+
+        assertEquals(item, same);
+        assertEquals(item.hashCode(), same.hashCode());
+        assertEquals(0, item.compareTo(same));
+        assertNotEquals(item, otherProduct);
+        assertNotEquals(item, otherLocation);
+        assertTrue(item.compareTo(otherProduct) < 0);
+        assertTrue(otherLocation.compareTo(item) > 0);
+        assertEquals(1, item.compareTo(null));
+        assertNotEquals(item, new Product("GH-123", "S1"));
+    }
+
+    @Test
+    void describeAndValidate() {
+        assertEquals("Item(productId=GH-123,locationCode=S1,quantity=1)", new Item("GH-123", "S1", 1).toString());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new Item("GH-123", "", 1).validate());
+        assertEquals("Required value missing: locationCode", e.getMessage());
+    }
+
+    @Test
+    void compareConcurrently() {
+        Set<Location> locations = IntStream.range(0, 10000).parallel()
+                .mapToObj(i -> new Location("S" + (i % 100), "Store " + i))
+                .collect(Collectors.toSet());
+        assertEquals(100, locations.size());
+    }
+}
@@ -0,0 +1,89 @@
+package org.lab.sms;
+
+import org.junit.jupiter.api.Test;
+import org.lab.sms.dataaccess.StockRepository;
+import org.lab.sms.domain.Item;
+import org.lab.sms.domain.Location;
+import org.lab.sms.domain.Product;
+import org.lab.sms.logic.Stock;
+import org.lab.sms.logic.StockLedger;
+import org.lab.sms.logic.StockManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "sms.seed.products=0",
+        "sms.seed.locations=0",
+        "sms.seed.items=0",
+        "sms.ledger.enabled=true",
+        "sms.ledger.directory=target/test-ledger",
+        "sms.ledger.name=ledger-tests",
+        "sms.ledger.flush-interval=3600000"})
+@ActiveProfiles("h2")
+class LedgerTests {
+
+    @Autowired
+    StockManager stockManager;
+    @Autowired
+    StockLedger stockLedger;
+    @Autowired
+    StockRepository stockRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void writeBehind() throws IOException {
+        jdbcTemplate.update("delete from item");
+        jdbcTemplate.update("delete from location");
+        jdbcTemplate.update("delete from product");
+        stockRepository.insert(new Location("S1", "Store 1"));
+        stockRepository.insert(new Product("L-1", "Ledger part 1"));
+        stockRepository.insert(new Item("L-1", "S1", 10));
+
+        stockManager.updateStockLevels(Arrays.asList(new Stock("L-1", "S1", 5), new Stock("L-1", "S1", -2)));
+        stockManager.updateStockLevels(Collections.singletonList(new Stock("L-1", "S1", 1)));
+
+        // journaled, but not yet written
+        assertEquals(1, stockLedger.getPendingSize());
+        assertEquals(Arrays.asList("L-1,5,S1", "L-1,-2,S1", "L-1,1,S1"),
+                Files.readAllLines(Paths.get("target/test-ledger/ledger.journal")));
+        assertEquals(10, stockRepository.findItem("L-1", "S1").getQuantity());
+
+        stockLedger.flush();
+        assertEquals(0, stockLedger.getPendingSize());
+        assertEquals(14, stockRepository.findItem("L-1", "S1").getQuantity());
+        assertEquals(0, Files.size(Paths.get("target/test-ledger/ledger.journal")));
+        // the last rotated journal is committed with its changes, so that it is not written again after a crash
+        assertEquals(1L, stockRepository.findLedgerWatermark("ledger-tests"));
+        assertFalse(Files.exists(Paths.get("target/test-ledger/ledger.journal.1.flushing")));
+
+        StockingException e = assertThrows(StockingException.class,
+                () -> stockManager.updateStockLevels(Collections.singletonList(new Stock("L-1", "S9", 1))));
+        assertEquals("Location [S9] is invalid", e.getMessage());
+        // would be read back from the journal as S1
+        e = assertThrows(StockingException.class,
+                () -> stockManager.updateStockLevels(Collections.singletonList(new Stock("L-1", " S1", 1))));
+        assertEquals("Stock change [L-1, S1] cannot be journaled", e.getMessage());
+        assertEquals(0, stockLedger.getPendingSize());
+
+        // a net change out of the int range is rejected before it is journaled
+        stockManager.updateStockLevels(Collections.singletonList(new Stock("L-1", "S1", 2000000000)));
+        e = assertThrows(StockingException.class, () -> stockManager.updateStockLevels(
+                Arrays.asList(new Stock("L-1", "S1", -1), new Stock("L-1", "S1", 2000000000))));
+        assertEquals("Net quantity change of [L-1,S1] is out of range", e.getMessage());
+        assertEquals(Collections.singletonList("L-1,2000000000,S1"),
+                Files.readAllLines(Paths.get("target/test-ledger/ledger.journal")));
+        stockLedger.flush();
+        assertEquals(2000000014, stockRepository.findItem("L-1", "S1").getQuantity());
+    }
+}
@@ -1,17 +1,47 @@
 package org.lab.sms;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.lab.sms.dataaccess.ProductCatalog;
 import org.lab.sms.dataaccess.StockRepository;
 import org.lab.sms.domain.Location;
 import org.lab.sms.domain.Product;
+import org.lab.sms.logic.BulkLoadResult;
+import org.lab.sms.logic.ImportJob;
+import org.lab.sms.logic.ImportJobs;
+import org.lab.sms.logic.PipelinedWriter;
 import org.lab.sms.logic.Stock;
+import org.lab.sms.logic.StockBulkLoader;
 import org.lab.sms.logic.StockManager;
+import org.lab.sms.logic.StockPage;
+import org.lab.sms.logic.StockRetry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -23,7 +53,17 @@ class LogicTests {
     @Autowired
     StockRepository stockRepository;
     @Autowired
+    ImportJobs importJobs;
+    @Autowired
     JdbcTemplate jdbcTemplate;
+    @Autowired
+    StockRetry stockRetry;
+    @Autowired
+    StockBulkLoader stockBulkLoader;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    ProductCatalog productCatalog;
 
     @Test
     @Order(0)
@@ -100,7 +140,271 @@ class LogicTests {
             System.out.println(stock.getProductId()+","+stock.getProductName()+","+stock.getLocationCode()+
                     ","+stock.getQuantity());
         }
+
+        List<Stock> streamed = new ArrayList<>();
+        stockManager.forEachStockLevel(streamed::add);
+        assertEquals(stocks.size(), streamed.size());
+        assertEquals(stocks.get(0).getProductName(), streamed.get(0).getProductName());
+
+        List<Stock> paged = new ArrayList<>();
+        StockPage page = stockManager.getStockLevels(null, 3);
+        paged.addAll(page.getStocks());
+        while (page.getNext() != null) {
+            page = stockManager.getStockLevels(page.getNext(), 3);
+            paged.addAll(page.getStocks());
+        }
+        assertEquals(stocks.size(), paged.size());
+        assertEquals(stocks.get(stocks.size() - 1).getLocationCode(), paged.get(paged.size() - 1).getLocationCode());
     }
 
+    @Test
+    @Order(4)
+    void changeStockLevelsFromFile() {
+        String lines = "A-0,5,S1\nA-0 , -2 , S1\n\nA-1,7,S3\nA-0,1,S1\n";
+        int before = stockRepository.findItem("A-0", "S1").getQuantity();
+
+        assertEquals(4, stockManager.updateStockLevels(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8))));
+        assertEquals(before + 4, stockRepository.findItem("A-0", "S1").getQuantity());
+
+        String invalid = "A-0,1,S1\nA-0,x,S1\n";
+        StockingException e = assertThrows(StockingException.class,
+                () -> stockManager.updateStockLevels(new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8))));
+        assertTrue(e.getMessage().startsWith("[Line#2]"));
+
+        String unknownProduct = "A-0,1,S1\nA-1,1,S1\nA-0,1,S1\nXX-0,1,S1\nXX-0,1,S1\n";
+        e = assertThrows(StockingException.class,
+                () -> stockManager.updateStockLevels(new ByteArrayInputStream(unknownProduct.getBytes(StandardCharsets.UTF_8))));
+        assertTrue(e.getMessage().startsWith("[Line#4]"));
+        assertEquals(before + 4, stockRepository.findItem("A-0", "S1").getQuantity());
+    }
+
+    @Test
+    @Order(5)
+    void importStockLevelsFromFile(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("changes.txt");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 400000; i++) {
+            lines.append(i % 2 == 0 ? "A-2,3,S2\n" : "A-3,-1,S2\n");
+        }
+        Files.write(file, lines.toString().getBytes(StandardCharsets.UTF_8));
+        int before = stockRepository.findItem("A-2", "S2").getQuantity();
+
+        assertEquals(400000, stockManager.importStockLevels(file));
+        assertEquals(before + 600000, stockRepository.findItem("A-2", "S2").getQuantity());
+
+        Files.write(file, "A-2,1,S2\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(file, "A-2,1\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        StockingException e = assertThrows(StockingException.class, () -> stockManager.importStockLevels(file));
+        assertEquals("[Line#400002] line formatting is invalid [A-2,1]", e.getMessage());
+
+        // net changes that overflow are reported instead of wrapping
+        String overflow = "A-2,2000000000,S2\nA-3,1,S2\nA-2,2000000000,S2\n";
+        Files.write(file, overflow.getBytes(StandardCharsets.UTF_8));
+        e = assertThrows(StockingException.class, () -> stockManager.importStockLevels(file));
+        assertEquals("[Line#3] net quantity change of [A-2,S2] is out of range", e.getMessage());
+        e = assertThrows(StockingException.class,
+                () -> stockManager.updateStockLevels(new ByteArrayInputStream(overflow.getBytes(StandardCharsets.UTF_8))));
+        assertEquals("[Line#3] net quantity change of [A-2,S2] is out of range", e.getMessage());
+    }
+
+    @Test
+    @Order(6)
+    void importStockLevelsInBackground(@TempDir Path directory) throws IOException, InterruptedException {
+        Path file = directory.resolve("changes.txt");
+        Files.write(file, "A-3,2,S3\nA-3,2,S3\nA-3,x,S3\n".getBytes(StandardCharsets.UTF_8));
+
+        ImportJob job = importJobs.submit(file, "changes.txt");
+        for (int i = 0; i < 100 && job.getState() != ImportJob.State.FAILED; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(ImportJob.State.FAILED, importJobs.getJob(job.getId()).getState());
+        assertTrue(job.getError().startsWith("[Line#3]"));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    @Order(7)
+    void changeStockLevelsConcurrently() throws InterruptedException, ExecutionException {
+        List<Stock> forward = new ArrayList<>();
+        for (int part = 0; part <= 3; part++) {
+            forward.add(new Stock("A-" + part, "S0", 1));
+            forward.add(new Stock("A-" + part, "S1", 1));
+        }
+        List<Stock> backward = new ArrayList<>(forward);
+        Collections.reverse(backward);
+        int before = stockRepository.findItem("A-0", "S0").getQuantity();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> updates = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                List<Stock> stocks = i % 2 == 0 ? forward : backward;
+                updates.add(executor.submit(() -> stockManager.updateStockLevels(stocks)));
+            }
+            for (Future<?> update : updates) update.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(before + 200, stockRepository.findItem("A-0", "S0").getQuantity());
+
+        // writes of more keys than are locked, racing to insert the same new items
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 400; i++) products.add(new Product("K-" + i, "Part K-" + i));
+        stockRepository.insertProducts(products);
+        executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 10; round++) {
+                List<Stock> stocks = new ArrayList<>();
+                for (int i = 0; i < 40; i++) stocks.add(new Stock("K-" + (round * 40 + i), "S2", 1));
+                CyclicBarrier start = new CyclicBarrier(4);
+                List<Future<?>> updates = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    updates.add(executor.submit(() -> {
+                        start.await();
+                        stockManager.updateStockLevels(stocks);
+                        return null;
+                    }));
+                }
+                for (Future<?> update : updates) update.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < 400; i++) assertEquals(4, stockRepository.findItem("K-" + i, "S2").getQuantity());
+    }
+
+    @Test
+    @Order(8)
+    void retryTransientFailures() {
+        long retries = stockRetry.getRetries();
+        int[] attempts = new int[1];
+        assertEquals("done", stockRetry.execute("Test write", () -> {
+            if (++attempts[0] < 3) throw new DeadlockLoserDataAccessException("deadlock victim", null);
+            return "done";
+        }));
+        assertEquals(retries + 2, stockRetry.getRetries());
+
+        long exhaustions = stockRetry.getExhaustions();
+        assertThrows(StockBusyException.class, () -> stockRetry.execute("Test write", () -> {
+            throw new CannotAcquireLockException("lock request time out period exceeded");
+        }));
+        assertEquals(exhaustions + 1, stockRetry.getExhaustions());
+
+        assertThrows(DataIntegrityViolationException.class, () -> stockRetry.execute("Test write", () -> {
+            throw new DataIntegrityViolationException("not transient");
+        }));
+    }
+
+    @Test
+    @Order(9)
+    void setStockLevelsAsSet() {
+        List<Stock> stocks = new ArrayList<>();
+        stocks.add(new Stock("B-0", "Part B-0", "S0", 1));
+        stocks.add(new Stock("B-0", "Part B-0 again", "S1", 2));
+        stocks.add(new Stock("A-0", "Part A-0", "S0", 3));
+        stocks.add(new Stock("B-0", "Part B-0", "S0", 4));
+        stocks.add(new Stock("B-1", "Part B-1", "S3", 5));
+        stockManager.setStockLevels(stocks);
+
+        assertEquals(4, stockRepository.findItem("B-0", "S0").getQuantity());
+        assertEquals(2, stockRepository.findItem("B-0", "S1").getQuantity());
+        assertEquals(3, stockRepository.findItem("A-0", "S0").getQuantity());
+        assertEquals(5, stockRepository.findItem("B-1", "S3").getQuantity());
+        assertEquals("Part B-0", stockRepository.findProduct("B-0").getName());
+
+        List<Stock> unnamed = Collections.singletonList(new Stock("B-2", null, "S0", 1));
+        StockingException e = assertThrows(StockingException.class, () -> stockManager.setStockLevels(unnamed));
+        assertEquals("ProductID [B-2] is missing product name value", e.getMessage());
+        assertNull(stockRepository.findProduct("B-2"));
+    }
+
+    @Test
+    @Order(10)
+    void bulkLoadStockLevels() throws IOException {
+        StringBuilder lines = new StringBuilder("productId,productName,locationCode,quantity\n");
+        for (int i = 0; i < 200; i++) {
+            lines.append("C-").append(i % 50).append(",Part C, size ").append(i % 50).append(",S").append(i / 50 % 4)
+                    .append(",").append(i).append("\n");
+        }
+        lines.append("\nA-0,,W0,7\n");
+        stockRepository.insert(new Location("W0", "Warehouse 0"));
+
+        BulkLoadResult result = stockBulkLoader.load(new ByteArrayInputStream(lines.toString().getBytes(StandardCharsets.UTF_8)), 100);
+        assertEquals(201, result.getRows());
+        assertEquals(50, result.getProducts());
+        assertEquals(3, result.getCommits());
+        assertEquals(199, stockRepository.findItem("C-49", "S3").getQuantity());
+        assertEquals(7, stockRepository.findItem("A-0", "W0").getQuantity());
+        assertEquals("Part C, size 7", stockRepository.findProduct("C-7").getName());
+
+        String duplicate = "C-0,,W0,1\nC-0,,W0,1\n";
+        StockingException e = assertThrows(StockingException.class,
+                () -> stockBulkLoader.load(new ByteArrayInputStream(duplicate.getBytes(StandardCharsets.UTF_8)), 1));
+        assertTrue(e.getMessage().startsWith("[Row#2-2]"));
+        assertTrue(e.getMessage().endsWith("rows up to 1 are committed"));
+
+        String invalid = "C-0,,W0,x\n";
+        e = assertThrows(StockingException.class,
+                () -> stockBulkLoader.load(new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8)), 1));
+        assertEquals("[Line#1] quantity [x] is invalid [C-0,,W0,x]", e.getMessage());
+    }
+
+    @Test
+    @Order(11)
+    void recordMetrics() {
+        double changes = meterRegistry.get("sms.lines.ingested").tag("source", "change").counter().count();
+        long updates = meterRegistry.get("sms.manager").tag("method", "updateStockLevels(List)").timer().count();
+        stockManager.updateStockLevels(Collections.singletonList(new Stock("A-0", "S0", 1)));
+        stockManager.getStockLevels(Collections.singletonList("A-0"));
+
+        assertEquals(changes + 1, meterRegistry.get("sms.lines.ingested").tag("source", "change").counter().count());
+        assertEquals(updates + 1, meterRegistry.get("sms.manager").tag("method", "updateStockLevels(List)").timer().count());
+        assertTrue(meterRegistry.get("sms.repository").tag("method", "addQuantities(List)").timer().count() > 0);
+        assertTrue(meterRegistry.get("sms.rows.written").tag("table", "item").tag("operation", "update").counter().count() > 0);
+        assertTrue(meterRegistry.get("cache.gets").tag("cache", "item-cache").tag("result", "miss").functionCounter().count() > 0);
+
+        // products of changes are validated with one lookup, not one per change
+        productCatalog.clear();
+        double lookups = meterRegistry.get("sms.repository").tag("method", "findProduct(String)").timer().count();
+        stockManager.updateStockLevels(Arrays.asList(new Stock("A-0", "S0", 1), new Stock("A-1", "S0", 1)));
+        assertEquals(lookups, meterRegistry.get("sms.repository").tag("method", "findProduct(String)").timer().count());
+    }
+
+    @Test
+    @Order(12)
+    void changeStockLevelsInBatches() throws InterruptedException {
+        int before = stockRepository.findItem("A-1", "S1").getQuantity();
+        List<Stock> stocks = new ArrayList<>();
+        for (int i = 0; i < 12000; i++) {
+            stocks.add(new Stock(i == 7000 ? "XX-0" : "A-1", "S1", 1));
+        }
+
+        StockingException e = assertThrows(StockingException.class, () -> stockManager.updateStockLevels(stocks.iterator()));
+        assertEquals("[Stock#5001-10000] ProductID [XX-0] is invalid; stock levels up to 5000 are committed", e.getMessage());
+        assertEquals(before + 5000, stockRepository.findItem("A-1", "S1").getQuantity());
+
+        assertEquals(7000, stockManager.updateStockLevels(stocks.subList(0, 7000).iterator()));
+        assertEquals(before + 12000, stockRepository.findItem("A-1", "S1").getQuantity());
+
+        // an unexpected failure while reading still stops the writer thread
+        Iterator<Stock> failing = stocks.subList(0, 6000).iterator();
+        assertThrows(IllegalStateException.class, () -> stockManager.updateStockLevels(new Iterator<Stock>() {
+            public boolean hasNext() {
+                return true;
+            }
+
+            public Stock next() {
+                if (!failing.hasNext()) throw new IllegalStateException("broken input");
+                return failing.next();
+            }
+        }));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        PipelinedWriter writer = new PipelinedWriter(executor, 2);
+        writer.submit(() -> {
+        });
+        writer.abort();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
 
 }
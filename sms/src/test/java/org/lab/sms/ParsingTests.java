@@ -0,0 +1,131 @@
+package org.lab.sms;
+
+import org.junit.jupiter.api.Test;
+import org.lab.sms.logic.StockChangeParser;
+import org.lab.sms.logic.Stock;
+import org.lab.sms.logic.StockDeltas;
+import org.lab.sms.service.StockLevelCodec;
+import org.lab.sms.service.StockLevelMessageConverter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParsingTests {
+
+    @Test
+    void parseLines() throws IOException {
+        StockDeltas deltas = new StockDeltas();
+        StockChangeParser parser = new StockChangeParser();
+        String lines = "GH-123,-2,S1\r\nGH-123 , +5 , S1\n\nMB-AC1,\t7,S2\rGH-123,1,S2";
+
+        assertEquals(4, parser.parse(stream(lines), record ->
+                deltas.add(record.getProductId(), record.getLocationCode(), record.getQuantity(), record.getLineNumber())));
+        assertEquals(3, deltas.size());
+        assertEquals("GH-123", deltas.getProductId(0));
+        assertEquals("S1", deltas.getLocationCode(0));
+        assertEquals(3, deltas.getQuantity(0));
+        assertEquals(7, deltas.getQuantity(1));
+        assertEquals(4, deltas.getFirstLine(2));
+
+        deltas.sort();
+        assertEquals("GH-123", deltas.getProductId(1));
+        assertEquals("S2", deltas.getLocationCode(1));
+        assertEquals(4, deltas.getFirstLine(1));
+        assertEquals("MB-AC1", deltas.getProductId(2));
+        assertEquals(7, deltas.getQuantity(2));
+        deltas.add("MB-AC1", "S2", 1, 5);
+        assertEquals(8, deltas.getQuantity(2));
+
+        deltas.add("MB-AC1", "S2", Integer.MAX_VALUE - 8, 6);
+        StockingException e = assertThrows(StockingException.class, () -> deltas.add("MB-AC1", "S2", 1, 7));
+        assertEquals("[Line#7] net quantity change of [MB-AC1,S2] is out of range", e.getMessage());
+        assertEquals(Integer.MAX_VALUE, deltas.getQuantity(2));
+    }
+
+    @Test
+    void encodeStockLevels() throws IOException {
+        List<Stock> stocks = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            stocks.add(new Stock("P-" + i / 8, i % 100 == 0 ? null : "Product ü " + i / 8, "S" + i % 8, i % 3 == 0 ? -i : i));
+        }
+        stocks.add(new Stock("P-0", "Product ü 0", "W0", Integer.MIN_VALUE));
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        StockLevelCodec.encode(stocks, encoded);
+        List<Stock> decoded = StockLevelCodec.decode(new ByteArrayInputStream(encoded.toByteArray()));
+        assertEquals(stocks.size(), decoded.size());
+        Map<String, String> firstNames = new HashMap<>();
+        for (int i = 0; i < stocks.size(); i++) {
+            Stock stock = stocks.get(i);
+            if (!firstNames.containsKey(stock.getProductId())) firstNames.put(stock.getProductId(), stock.getProductName());
+            assertEquals(stock.getProductId(), decoded.get(i).getProductId());
+            assertEquals(firstNames.get(stock.getProductId()), decoded.get(i).getProductName());
+            assertEquals(stock.getLocationCode(), decoded.get(i).getLocationCode());
+            assertEquals(stock.getQuantity(), decoded.get(i).getQuantity());
+        }
+
+        byte[] truncated = Arrays.copyOf(encoded.toByteArray(), encoded.size() - 1);
+        assertThrows(IOException.class, () -> StockLevelCodec.decode(new ByteArrayInputStream(truncated)));
+        assertThrows(IOException.class, () -> StockLevelCodec.decode(stream("[]")));
+    }
+
+    @Test
+    void convertOnlyStockLists() {
+        StockLevelMessageConverter converter = new StockLevelMessageConverter();
+        MediaType mediaType = MediaType.parseMediaType(StockLevelCodec.MEDIA_TYPE);
+        Type stockList = ResolvableType.forClassWithGenerics(List.class, Stock.class).getType();
+        Type stringList = ResolvableType.forClassWithGenerics(List.class, String.class).getType();
+        assertTrue(converter.canWrite(stockList, ArrayList.class, mediaType));
+        assertFalse(converter.canWrite(stringList, ArrayList.class, mediaType));
+        assertFalse(converter.canWrite(null, ArrayList.class, mediaType));
+        assertFalse(converter.canWrite(ArrayList.class, mediaType));
+    }
+
+    @Test
+    void parseInvalidLines() {
+        StockChangeParser parser = new StockChangeParser();
+        StockingException e = assertThrows(StockingException.class,
+                () -> parser.parse(stream("GH-123,1,S1\nGH-123,1\n"), record -> { }));
+        assertEquals("[Line#2] line formatting is invalid [GH-123,1]", e.getMessage());
+
+        e = assertThrows(StockingException.class,
+                () -> new StockChangeParser().parse(stream("GH-123,1x,S1"), record -> { }));
+        assertEquals("[Line#1] quantity [1x] is invalid [GH-123,1x,S1]", e.getMessage());
+
+        e = assertThrows(StockingException.class,
+                () -> new StockChangeParser().parse(stream("GH-123,2147483648,S1"), record -> { }));
+        assertTrue(e.getMessage().startsWith("[Line#1] quantity"));
+    }
+
+    @Test
+    void parseChangeFile() throws IOException {
+        StockDeltas deltas = new StockDeltas();
+        StockChangeParser parser = new StockChangeParser();
+        parser.skipLines(4);
+        try (InputStream in = Files.newInputStream(Paths.get("../data/stock-level-changes.txt"))) {
+            assertEquals(84996, parser.parse(in, record ->
+                    deltas.add(record.getProductId(), record.getLocationCode(), record.getQuantity(), record.getLineNumber())));
+        }
+        assertEquals(4, deltas.size());
+        assertEquals(5, deltas.getFirstLine(0));
+    }
+
+    private static InputStream stream(String lines) {
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
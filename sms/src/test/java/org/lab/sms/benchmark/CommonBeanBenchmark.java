@@ -0,0 +1,129 @@
+package org.lab.sms.benchmark;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.lab.sms.domain.Item;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares key based equals, hashCode and compareTo of {@link Item} against the property lookup implementation that
+ * <code>CommonBean</code> used before its getters were resolved into method handles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonBeanBenchmark {
+
+    private static final String[] KEYS = {"productId", "locationCode"};
+
+    private Item item;
+    private Item same;
+    private Item other;
+    private Item[] items;
+
+    @Setup
+    public void setup() {
+        item = new Item("P000042", "AMS-01", 10);
+        same = new Item("P000042", "AMS-01", 20);
+        other = new Item("P000042", "AMS-02", 10);
+        items = new Item[1000];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(String.format("P%06d", i / 10), "LOC-" + (i % 10), i);
+        }
+    }
+
+    @Benchmark
+    public boolean equalsMethodHandle() {
+        return item.equals(same);
+    }
+
+    @Benchmark
+    public boolean equalsPropertyUtils() {
+        return legacyEquals(item, same);
+    }
+
+    @Benchmark
+    public int hashCodeMethodHandle() {
+        return item.hashCode();
+    }
+
+    @Benchmark
+    public int hashCodePropertyUtils() {
+        return legacyHashCode(item);
+    }
+
+    @Benchmark
+    public int compareToMethodHandle() {
+        return item.compareTo(other);
+    }
+
+    @Benchmark
+    public int compareToPropertyUtils() {
+        return legacyCompareTo(item, other);
+    }
+
+    @Benchmark
+    public String toStringMethodHandle() {
+        return item.toString();
+    }
+
+    @Benchmark
+    public int hashSetMethodHandle() {
+        Set<Item> set = new HashSet<>();
+        for (Item i : items) set.add(i);
+        return set.size();
+    }
+
+    private static boolean legacyEquals(Object bean, Object obj) {
+        if (obj == null) return false;
+        for (String key : KEYS) {
+            try {
+                Object thisValue = PropertyUtils.getSimpleProperty(bean, key);
+                Object objValue = PropertyUtils.getSimpleProperty(obj, key);
+                if (thisValue == null) {
+                    if (objValue != null) return false;
+                } else if (objValue == null || !thisValue.equals(objValue)) {
+                    return false;
+                }
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int legacyHashCode(Object bean) {
+        int hashCode = 0;
+        for (String key : KEYS) {
+            try {
+                Object thisValue = PropertyUtils.getSimpleProperty(bean, key);
+                hashCode = 37 * hashCode + (thisValue == null ? 0 : thisValue.hashCode());
+            } catch (Exception e) {
+                return hashCode;
+            }
+        }
+        return hashCode;
+    }
+
+    private static int legacyCompareTo(Object bean, Object obj) {
+        if (obj == null) return 1;
+        if (legacyEquals(bean, obj)) return 0;
+        for (String key : KEYS) {
+            try {
+                Object thisValue = PropertyUtils.getProperty(bean, key);
+                Object objValue = PropertyUtils.getProperty(obj, key);
+                Object result = thisValue.getClass().getMethod("compareTo", String.class).invoke(thisValue, objValue);
+                if ((Integer) result != 0) return (Integer) result;
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+}
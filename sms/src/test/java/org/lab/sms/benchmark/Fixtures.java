@@ -0,0 +1,52 @@
+package org.lab.sms.benchmark;
+
+import org.lab.sms.SmsApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Shared benchmark fixtures : the stock change file and an application context on the h2 profile, without the
+ * synthetic catalog.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return the stock change file, <code>-Dsms.benchmark.fixture</code> or data/stock-level-changes.txt
+     */
+    static Path changeFile() {
+        return Paths.get(System.getProperty("sms.benchmark.fixture", "../data/stock-level-changes.txt"));
+    }
+
+    static byte[] changeBytes() {
+        try {
+            return Files.readAllBytes(changeFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Start the application without web server on a fresh in-memory H2 database.
+     */
+    static ConfigurableApplicationContext startH2(String name) {
+        return new SpringApplicationBuilder(SmsApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .profiles("h2")
+                .run("--logging.level.root=WARN",
+                        "--spring.datasource.url=jdbc:h2:mem:" + name + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--sms.seed.products=0",
+                        "--sms.seed.locations=0");
+    }
+}
@@ -0,0 +1,53 @@
+package org.lab.sms.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lab.sms.logic.Stock;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization and deserialization of the <code>List&lt;Stock&gt;</code> bodies of /stock/level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private static final TypeReference<List<Stock>> STOCK_LIST = new TypeReference<List<Stock>>() {
+    };
+
+    @Param({"100", "10000"})
+    int size;
+
+    private ObjectMapper objectMapper;
+    private List<Stock> stocks;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        stocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stocks.add(new Stock(String.format("P%06d", i / 8), "Product " + i / 8, "S" + i % 8, i));
+        }
+        json = objectMapper.writeValueAsBytes(stocks);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(stocks);
+    }
+
+    @Benchmark
+    public List<Stock> deserialize() throws IOException {
+        return objectMapper.readValue(json, STOCK_LIST);
+    }
+}
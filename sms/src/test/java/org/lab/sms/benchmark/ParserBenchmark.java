@@ -0,0 +1,45 @@
+package org.lab.sms.benchmark;
+
+import org.lab.sms.logic.StockChangeParser;
+import org.lab.sms.logic.StockDeltas;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the stock change fixture, the first step of <code>StockManager.updateStockLevels(InputStream)</code>, with
+ * and without folding the changes into net changes per product and location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private byte[] changes;
+
+    @Setup
+    public void setup() {
+        changes = Fixtures.changeBytes();
+    }
+
+    @Benchmark
+    public long parseStream() throws IOException {
+        long[] sum = new long[1];
+        new StockChangeParser().parse(new ByteArrayInputStream(changes), record -> sum[0] += record.getQuantity());
+        return sum[0];
+    }
+
+    @Benchmark
+    public StockDeltas parseAndFold() {
+        StockDeltas deltas = new StockDeltas();
+        new StockChangeParser().parse(ByteBuffer.wrap(changes), record -> deltas.add(record.getProductId(),
+                record.getLocationCode(), record.getQuantity(), record.getLineNumber()));
+        return deltas;
+    }
+}
@@ -0,0 +1,87 @@
+package org.lab.sms.benchmark;
+
+import org.lab.sms.dataaccess.StockRepository;
+import org.lab.sms.domain.Item;
+import org.lab.sms.domain.Product;
+import org.lab.sms.logic.Stock;
+import org.lab.sms.logic.StockManager;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end ingest and read paths of <code>StockManager</code> against an in-memory H2 database in SQL Server
+ * compatibility mode, with a catalog of <code>products</code> products stocked at every location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockServiceBenchmark {
+
+    private static final String[] FIXTURE_PRODUCTS = {"GH-123", "GH-500", "MB-AC1", "MB-AC2"};
+    private static final String[] LOCATIONS = {"S0", "S1", "S2", "S3", "W0", "W1", "W2", "W3"};
+
+    @Param({"1000"})
+    int products;
+
+    private ConfigurableApplicationContext context;
+    private StockManager stockManager;
+    private StockRepository stockRepository;
+    private byte[] changes;
+    private List<String> productIds;
+
+    @Setup
+    public void setup() {
+        context = Fixtures.startH2("benchmark");
+        stockManager = context.getBean(StockManager.class);
+        stockRepository = context.getBean(StockRepository.class);
+        changes = Fixtures.changeBytes();
+
+        for (String id : FIXTURE_PRODUCTS) {
+            stockRepository.insert(new Product(id, "Product " + id));
+        }
+        productIds = new ArrayList<>(products);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            String id = String.format("P%06d", i);
+            stockRepository.insert(new Product(id, "Product " + id));
+            productIds.add(id);
+            for (String location : LOCATIONS) {
+                items.add(new Item(id, location, i));
+            }
+        }
+        stockRepository.addQuantities(items);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int ingestChangeFile() {
+        return stockManager.updateStockLevels(new ByteArrayInputStream(changes));
+    }
+
+    @Benchmark
+    public int importChangeFile() {
+        return stockManager.importStockLevels(Fixtures.changeFile());
+    }
+
+    @Benchmark
+    public List<Stock> getAllStockLevels() {
+        return stockManager.getStockLevels();
+    }
+
+    @Benchmark
+    public List<Product> findProducts() {
+        return stockRepository.findProducts(productIds);
+    }
+}
@@ -0,0 +1,73 @@
+package org.lab.sms.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lab.sms.logic.Stock;
+import org.lab.sms.service.StockLevelCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>GET /stock/level</code> bodies as JSON against the <code>application/x-sms-stock</code> columnar format.
+ * Payload sizes are printed by the setup of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final TypeReference<List<Stock>> STOCK_LIST = new TypeReference<List<Stock>>() {
+    };
+
+    @Param({"100", "10000"})
+    int size;
+
+    private ObjectMapper objectMapper;
+    private List<Stock> stocks;
+    private byte[] json;
+    private byte[] compact;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        stocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stocks.add(new Stock(String.format("P%06d", i / 8), "Product " + i / 8, "S" + i % 8, i % 1000));
+        }
+        json = objectMapper.writeValueAsBytes(stocks);
+        compact = encodeCompact();
+        System.out.println(size + " stock levels: json " + json.length + " bytes, compact " + compact.length
+                + " bytes (" + (100 * compact.length / json.length) + "%)");
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return objectMapper.writeValueAsBytes(stocks);
+    }
+
+    @Benchmark
+    public byte[] encodeCompact() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json != null ? json.length / 4 : 8192);
+        StockLevelCodec.encode(stocks, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Stock> decodeJson() throws IOException {
+        return objectMapper.readValue(json, STOCK_LIST);
+    }
+
+    @Benchmark
+    public List<Stock> decodeCompact() throws IOException {
+        return StockLevelCodec.decode(new ByteArrayInputStream(compact));
+    }
+}